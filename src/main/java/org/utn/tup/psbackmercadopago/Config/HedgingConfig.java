@@ -0,0 +1,37 @@
+package org.utn.tup.psbackmercadopago.Config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.utn.tup.psbackmercadopago.service.HedgedReadExecutor;
+
+import java.time.Duration;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class HedgingConfig {
+
+    @Bean(destroyMethod = "close")
+    public HedgedReadExecutor hedgedReadExecutor(
+            @Value("${mercadopago.hedging.enabled:false}") boolean enabled,
+            @Value("${mercadopago.hedging.percentile:0.95}") double percentile,
+            @Value("${mercadopago.hedging.min-delay:50ms}") Duration minDelay,
+            @Value("${mercadopago.hedging.max-delay:2s}") Duration maxDelay,
+            @Value("${mercadopago.hedging.budget-ratio:0.1}") double budgetRatio,
+            @Value("${mercadopago.hedging.max-threads:64}") int maxThreads,
+            MeterRegistry meterRegistry) {
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("mp-read-");
+        threadFactory.setDaemon(true);
+
+        // Acotado: con el pool lleno las lecturas corren en el hilo del pedido, sin hedge
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+
+        return new HedgedReadExecutor(enabled, executor, percentile, minDelay, maxDelay, budgetRatio, meterRegistry);
+    }
+}
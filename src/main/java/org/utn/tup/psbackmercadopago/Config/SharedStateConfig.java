@@ -0,0 +1,38 @@
+package org.utn.tup.psbackmercadopago.Config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.utn.tup.psbackmercadopago.service.SharedPaymentState;
+import org.utn.tup.psbackmercadopago.state.InMemorySharedStateStore;
+import org.utn.tup.psbackmercadopago.state.NearCachedSharedStateStore;
+import org.utn.tup.psbackmercadopago.state.RedisSharedStateStore;
+import org.utn.tup.psbackmercadopago.state.SharedStateStore;
+
+import java.time.Duration;
+
+@Slf4j
+@Configuration
+public class SharedStateConfig {
+
+    @Bean(destroyMethod = "close")
+    public SharedStateStore sharedStateStore(
+            @Value("${app.state.store:memory}") String store,
+            @Value("${app.state.redis-uri:redis://localhost:6379}") String redisUri,
+            @Value("${app.state.redis-timeout:PT1S}") Duration redisTimeout,
+            @Value("${app.state.near-cache-ttl:PT2S}") Duration nearCacheTtl,
+            @Value("${app.state.max-local-entries:50000}") int maxLocalEntries,
+            MeterRegistry meterRegistry) {
+
+        // Con varias réplicas usar redis; memory solo es compartido dentro de una instancia
+        if ("redis".equalsIgnoreCase(store)) {
+            return new NearCachedSharedStateStore(new RedisSharedStateStore(redisUri, redisTimeout),
+                    nearCacheTtl, maxLocalEntries, meterRegistry);
+        }
+        log.info("Using in-memory shared state store");
+        // Sin remoto esta es la única copia: al llenarse solo se desalojan estados de pago
+        return new InMemorySharedStateStore(maxLocalEntries, SharedPaymentState::isRebuildable);
+    }
+}
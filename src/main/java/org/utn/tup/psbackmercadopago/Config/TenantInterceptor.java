@@ -0,0 +1,69 @@
+package org.utn.tup.psbackmercadopago.Config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.utn.tup.psbackmercadopago.Exceptions.ErrorLogLimiter;
+import org.utn.tup.psbackmercadopago.service.TenantContext;
+import org.utn.tup.psbackmercadopago.service.TenantRegistry;
+
+/**
+ * Resuelve la cuenta de MercadoPago del pedido. El frontend envía la cabecera {@code X-Tenant-Id};
+ * los webhooks y callbacks, que no pueden agregar cabeceras, usan el parámetro {@code tenant}.
+ * <p>
+ * Con varias cuentas configuradas, un pedido sin cuenta va a la cuenta por defecto pero se cuenta en
+ * {@code mp.tenant.defaulted} (por ruta) y se loguea: suele ser una URL de notificación mal armada.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TenantInterceptor implements HandlerInterceptor {
+
+    public static final String TENANT_HEADER = "X-Tenant-Id";
+    public static final String TENANT_PARAM = "tenant";
+
+    private final TenantRegistry tenantRegistry;
+    private final MeterRegistry meterRegistry;
+    private final ErrorLogLimiter logLimiter = new ErrorLogLimiter(10, 60_000);
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String tenantId = request.getHeader(TENANT_HEADER);
+        if (tenantId == null || tenantId.isBlank()) {
+            tenantId = request.getParameter(TENANT_PARAM);
+        }
+        if ((tenantId == null || tenantId.isBlank()) && tenantRegistry.hasMultipleTenants()) {
+            recordDefaulted(request);
+        }
+        TenantContext.set(tenantRegistry.resolve(tenantId).getId());
+        return true;
+    }
+
+    private void recordDefaulted(HttpServletRequest request) {
+        // El patrón de la ruta y no la URI, para no abrir una serie por id de pago
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String path = pattern != null ? pattern.toString() : "unknown";
+        Counter.builder("mp.tenant.defaulted")
+                .description("Pedidos sin cuenta indicada atendidos con la cuenta por defecto")
+                .tag("path", path)
+                .register(meterRegistry)
+                .increment();
+
+        long suppressed = logLimiter.acquire(TenantInterceptor.class);
+        if (suppressed != ErrorLogLimiter.SUPPRESS) {
+            log.warn("Request to {} without {} header or ?{}= parameter, using tenant '{}' ({} similar suppressed)",
+                    path, TENANT_HEADER, TENANT_PARAM, TenantRegistry.DEFAULT_TENANT, suppressed);
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        TenantContext.clear();
+    }
+}
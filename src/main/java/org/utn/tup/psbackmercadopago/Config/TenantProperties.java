@@ -0,0 +1,31 @@
+package org.utn.tup.psbackmercadopago.Config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cuentas de MercadoPago atendidas por esta instancia ({@code mercadopago.tenants.<id>.*}).
+ * La cuenta {@code default} se arma con {@code mercadopago.access.token} si no se declara aparte.
+ */
+@Data
+@ConfigurationProperties(prefix = "mercadopago")
+public class TenantProperties {
+
+    private Map<String, Tenant> tenants = new LinkedHashMap<>();
+
+    @Data
+    public static class Tenant {
+        private String accessToken;
+        // Si no se define se usa mercadopago.webhook.secret
+        private String webhookSecret;
+        private int maxConcurrentRequests = 20;
+        private int maxConnections = 20;
+        private Duration acquireTimeout = Duration.ofSeconds(2);
+        private int connectionTimeout = 5000;
+        private int socketTimeout = 10000;
+    }
+}
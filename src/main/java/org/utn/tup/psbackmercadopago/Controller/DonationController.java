@@ -12,16 +12,26 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.view.RedirectView;
+import org.utn.tup.psbackmercadopago.Exceptions.ErrorLogLimiter;
+import org.utn.tup.psbackmercadopago.Exceptions.PaymentProcessingException;
 import org.utn.tup.psbackmercadopago.dto.DonationRequestDto;
 import org.utn.tup.psbackmercadopago.dto.DonationResponseDto;
 import org.utn.tup.psbackmercadopago.dto.PaymentStatusDto;
 import org.utn.tup.psbackmercadopago.service.DonationService;
+import org.utn.tup.psbackmercadopago.service.NotificationDrainCoordinator;
 import org.utn.tup.psbackmercadopago.service.PaymentService;
+import org.utn.tup.psbackmercadopago.service.SharedPaymentState;
+import org.utn.tup.psbackmercadopago.service.TenantRegistry;
+import org.utn.tup.psbackmercadopago.service.TerminalStatusResponseCache;
+import org.utn.tup.psbackmercadopago.service.WebhookSignatureVerifier;
 
 import java.util.Map;
+import java.util.Optional;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -33,6 +43,12 @@ public class DonationController {
 
     private final DonationService donationService;
     private final PaymentService paymentService;
+    private final TenantRegistry tenantRegistry;
+    private final NotificationDrainCoordinator drainCoordinator;
+    private final SharedPaymentState sharedState;
+    private final TerminalStatusResponseCache responseCache;
+
+    private final ErrorLogLimiter logLimiter = new ErrorLogLimiter(10, 1000);
 
     @Value("${app.frontend-url}")
     private String frontendUrl;
@@ -42,17 +58,21 @@ public class DonationController {
             @ApiResponse(responseCode = "201", description = "Donación creada exitosamente",
                     content = @Content(schema = @Schema(implementation = DonationResponseDto.class))),
             @ApiResponse(responseCode = "400", description = "Datos de entrada inválidos"),
+            @ApiResponse(responseCode = "409", description = "La donación con esa Idempotency-Key todavía se está creando"),
+            @ApiResponse(responseCode = "422", description = "La Idempotency-Key ya se usó con otra donación"),
             @ApiResponse(responseCode = "500", description = "Error interno del servidor")
     })
 
     @PostMapping
     public ResponseEntity<DonationResponseDto> createDonation(
-            @Valid @RequestBody DonationRequestDto request) {
+            @Valid @RequestBody DonationRequestDto request,
+            @Parameter(description = "Clave para reintentar sin crear otra preferencia")
+            @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
 
         log.info("Received donation request for amount: {} from: {}",
                 request.getAmount(), request.getPayerEmail());
 
-        DonationResponseDto response = donationService.createDonation(request);
+        DonationResponseDto response = donationService.createDonation(request, idempotencyKey);
 
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
@@ -69,8 +89,8 @@ public class DonationController {
         log.info("Payment success callback - Payment ID: {}, Status: {}", payment_id, status);
 
         try {
-            PaymentStatusDto paymentStatus = paymentService.processPaymentCallback(allParams);
-            log.info("Payment processed successfully: {}", paymentStatus);
+            drainCoordinator.process(NotificationDrainCoordinator.WorkType.CALLBACK, payment_id, allParams)
+                    .ifPresent(paymentStatus -> log.info("Payment processed successfully: {}", paymentStatus));
 
             // Redirigir al frontend con parámetros de éxito
             String redirectUrl = String.format("%s/payment/success?payment_id=%s&status=%s&reference=%s",
@@ -79,7 +99,7 @@ public class DonationController {
             return new RedirectView(redirectUrl);
 
         } catch (Exception e) {
-            log.error("Error processing success callback", e);
+            logFailure("Error processing success callback", e);
             return new RedirectView(frontendUrl + "/payment/error");
         }
     }
@@ -96,8 +116,8 @@ public class DonationController {
         log.warn("Payment failure callback - Payment ID: {}, Status: {}", payment_id, status);
 
         try {
-            PaymentStatusDto paymentStatus = paymentService.processPaymentCallback(allParams);
-            log.info("Payment failure processed: {}", paymentStatus);
+            drainCoordinator.process(NotificationDrainCoordinator.WorkType.CALLBACK, payment_id, allParams)
+                    .ifPresent(paymentStatus -> log.info("Payment failure processed: {}", paymentStatus));
 
             // Redirigir al frontend con parámetros de fallo
             String redirectUrl = String.format("%s/payment/failure?payment_id=%s&status=%s&reference=%s",
@@ -106,7 +126,7 @@ public class DonationController {
             return new RedirectView(redirectUrl);
 
         } catch (Exception e) {
-            log.error("Error processing failure callback", e);
+            logFailure("Error processing failure callback", e);
             return new RedirectView(frontendUrl + "/payment/error");
         }
     }
@@ -123,8 +143,8 @@ public class DonationController {
         log.info("Payment pending callback - Payment ID: {}, Status: {}", payment_id, status);
 
         try {
-            PaymentStatusDto paymentStatus = paymentService.processPaymentCallback(allParams);
-            log.info("Payment pending processed: {}", paymentStatus);
+            drainCoordinator.process(NotificationDrainCoordinator.WorkType.CALLBACK, payment_id, allParams)
+                    .ifPresent(paymentStatus -> log.info("Payment pending processed: {}", paymentStatus));
 
             // Redirigir al frontend con parámetros de pendiente
             String redirectUrl = String.format("%s/payment/pending?payment_id=%s&status=%s&reference=%s",
@@ -133,7 +153,7 @@ public class DonationController {
             return new RedirectView(redirectUrl);
 
         } catch (Exception e) {
-            log.error("Error processing pending callback", e);
+            logFailure("Error processing pending callback", e);
             return new RedirectView(frontendUrl + "/payment/error");
         }
     }
@@ -141,17 +161,44 @@ public class DonationController {
     @Operation(summary = "Webhook de notificaciones", description = "Endpoint para recibir notificaciones IPN de MercadoPago")
     @PostMapping("/webhook")
     public ResponseEntity<String> handleWebhook(
-            @RequestBody Map<String, Object> payload,
+            @RequestBody(required = false) String payload,
             @RequestParam(required = false) String type,
-            @RequestParam(required = false) String id) {
+            @RequestParam(required = false) String id,
+            @RequestParam(name = "data.id", required = false) String dataId,
+            @RequestHeader(name = "x-signature", required = false) String signature,
+            @RequestHeader(name = "x-request-id", required = false) String requestId) {
+
+        // Las notificaciones nuevas traen data.id, las IPN viejas solo id
+        String resourceId = dataId != null ? dataId : id;
+
+        // Primer filtro: la firma se valida antes de loguear o consultar a MercadoPago
+        WebhookSignatureVerifier.Result verification = tenantRegistry.current().getWebhookVerifier()
+                .verify(signature, requestId, resourceId);
+        if (!verification.accepted()) {
+            log.warn("Rejected webhook notification - Type: {}, ID: {}, Reason: {}", type, resourceId, verification);
+            return ResponseEntity.status(org.springframework.http.HttpStatus.UNAUTHORIZED).body("INVALID_SIGNATURE");
+        }
+
+        // La misma notificación puede llegar a varias réplicas: solo la primera la procesa
+        String notificationKey = requestId != null ? type + ":" + resourceId + ":" + requestId : null;
+        if (notificationKey != null && !sharedState.markWebhookReceived(notificationKey)) {
+            log.debug("Duplicate webhook notification ignored - Type: {}, ID: {}", type, resourceId);
+            return ResponseEntity.ok("DUPLICATE");
+        }
 
-        log.info("Received webhook notification - Type: {}, ID: {}, Payload: {}", type, id, payload);
+        log.info("Received webhook notification - Type: {}, ID: {}, Payload: {}", type, resourceId, payload);
 
         try {
             // Procesar webhook según el tipo
-            if ("payment".equals(type) && id != null) {
-                PaymentStatusDto paymentStatus = paymentService.getPaymentStatus(id);
-                log.info("Webhook payment status: {}", paymentStatus);
+            if ("payment".equals(type) && resourceId != null) {
+                Optional<PaymentStatusDto> paymentStatus = drainCoordinator.process(
+                        NotificationDrainCoordinator.WorkType.WEBHOOK, resourceId, Map.of());
+                if (paymentStatus.isEmpty()) {
+                    releaseNotification(notificationKey);
+                    // Nos estamos apagando: quedó guardada y además MercadoPago reintenta ante el 503
+                    return ResponseEntity.status(org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE).body("DRAINING");
+                }
+                log.info("Webhook payment status: {}", paymentStatus.get());
 
                 // Aquí puedes agregar lógica adicional como:
                 // - Actualizar base de datos
@@ -162,32 +209,96 @@ public class DonationController {
             return ResponseEntity.ok("OK");
 
         } catch (Exception e) {
-            log.error("Error processing webhook", e);
+            logFailure("Error processing webhook", e);
+            releaseNotification(notificationKey);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("ERROR");
         }
     }
 
+    // Durante una caída de MercadoPago fallan todas las notificaciones: mismo límite por tipo que el handler global
+    private void logFailure(String message, Exception e) {
+        long suppressed = logLimiter.acquire(e.getClass());
+        if (suppressed == ErrorLogLimiter.SUPPRESS) {
+            return;
+        }
+        if (e instanceof PaymentProcessingException expected && expected.isExpected()) {
+            log.warn("{}: {} (cause: {}, suppressed since last log: {})",
+                    message, e.getMessage(), e.getCause(), suppressed);
+        } else {
+            log.error("{} (suppressed since last log: {}): ", message, suppressed, e);
+        }
+    }
+
+    private void releaseNotification(String notificationKey) {
+        if (notificationKey != null) {
+            sharedState.clearWebhookMark(notificationKey);
+        }
+    }
+
     @Operation(summary = "Obtener estado de pago", description = "Consulta el estado actual de un pago por su ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Estado del pago obtenido exitosamente",
                     content = @Content(schema = @Schema(implementation = PaymentStatusDto.class))),
+            @ApiResponse(responseCode = "304", description = "El pago no cambió desde el ETag indicado"),
             @ApiResponse(responseCode = "404", description = "Pago no encontrado"),
             @ApiResponse(responseCode = "500", description = "Error interno del servidor")
     })
     @GetMapping("/status/{paymentId}")
-    public ResponseEntity<PaymentStatusDto> getPaymentStatus(
-            @Parameter(description = "ID del pago a consultar") @PathVariable String paymentId) {
+    public ResponseEntity<?> getPaymentStatus(
+            @Parameter(description = "ID del pago a consultar") @PathVariable String paymentId,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         log.info("Getting payment status for ID: {}", paymentId);
 
-        PaymentStatusDto paymentStatus = paymentService.getPaymentStatus(paymentId);
+        // Los estados terminales no cambian: se responden con los bytes ya serializados
+        Optional<TerminalStatusResponseCache.CachedResponse> cached = responseCache.get(paymentId);
+        if (cached.isEmpty()) {
+            PaymentService.StatusResponse paymentStatus = paymentService.getPaymentStatus(paymentId);
+            cached = paymentStatus.cached();
+            if (cached.isEmpty()) {
+                return ResponseEntity.ok(paymentStatus.status());
+            }
+        }
+
+        TerminalStatusResponseCache.CachedResponse response = cached.get();
+        if (response.matches(ifNoneMatch)) {
+            return ResponseEntity.status(org.springframework.http.HttpStatus.NOT_MODIFIED).eTag(response.etag()).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(response.etag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(response.body());
+    }
+
+    @Operation(summary = "Obtener estado de pago por referencia externa",
+            description = "Consulta el estado del último pago asociado a la referencia externa de una donación")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Estado del pago obtenido exitosamente",
+                    content = @Content(schema = @Schema(implementation = PaymentStatusDto.class))),
+            @ApiResponse(responseCode = "404", description = "No hay pagos para la referencia"),
+            @ApiResponse(responseCode = "500", description = "Error interno del servidor")
+    })
+    @GetMapping("/status/by-reference/{externalReference}")
+    public ResponseEntity<PaymentStatusDto> getPaymentStatusByReference(
+            @Parameter(description = "Referencia externa de la donación") @PathVariable String externalReference) {
+
+        log.info("Getting payment status for external reference: {}", externalReference);
 
-        return ResponseEntity.ok(paymentStatus);
+        return paymentService.getPaymentStatusByReference(externalReference)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     @Operation(summary = "Health check", description = "Endpoint para verificar el estado del servicio")
     @GetMapping("/health")
     public ResponseEntity<Map<String, String>> healthCheck() {
+        if (!drainCoordinator.isAccepting()) {
+            return ResponseEntity.status(org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
+                    "status", "OUT_OF_SERVICE",
+                    "service", "MercadoPago Donation Service",
+                    "timestamp", java.time.LocalDateTime.now().toString()
+            ));
+        }
         return ResponseEntity.ok(Map.of(
                 "status", "UP",
                 "service", "MercadoPago Donation Service",
@@ -0,0 +1,105 @@
+package org.utn.tup.psbackmercadopago.Exceptions;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Arma el JSON de {@link GlobalExceptionHandler.ErrorResponse} sin pasar por Jackson en cada error.
+ * <p>
+ * La parte constante de cada tipo de error ({@code "status":502,"error":"..."}) se serializa una sola
+ * vez, el timestamp formateado se reutiliza dentro del mismo milisegundo y solo se escapan el mensaje
+ * y el path. El resultado tiene los mismos campos que la serialización de {@code ErrorResponse}.
+ */
+class ErrorBodyWriter {
+
+    private static final byte[] TIMESTAMP_START = "{\"timestamp\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TIMESTAMP_END = "\",".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MESSAGE_FIELD = ",\"message\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PATH_FIELD = ",\"path\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = ",\"validationErrors\":null}".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final Map<String, Prefix> prefixes = new ConcurrentHashMap<>();
+    private final ZoneId zone = ZoneId.systemDefault();
+    private volatile Timestamp timestamp = new Timestamp(Long.MIN_VALUE, new byte[0]);
+
+    byte[] write(HttpStatus status, String error, String message, String path) {
+        byte[] prefix = prefix(status, error);
+        byte[] time = timestamp();
+        byte[] quotedMessage = quote(message);
+        byte[] quotedPath = quote(path);
+
+        byte[] body = new byte[TIMESTAMP_START.length + time.length + TIMESTAMP_END.length + prefix.length
+                + MESSAGE_FIELD.length + quotedMessage.length + PATH_FIELD.length + quotedPath.length + END.length];
+        int pos = 0;
+        pos = put(body, pos, TIMESTAMP_START);
+        pos = put(body, pos, time);
+        pos = put(body, pos, TIMESTAMP_END);
+        pos = put(body, pos, prefix);
+        pos = put(body, pos, MESSAGE_FIELD);
+        pos = put(body, pos, quotedMessage);
+        pos = put(body, pos, PATH_FIELD);
+        pos = put(body, pos, quotedPath);
+        put(body, pos, END);
+        return body;
+    }
+
+    private byte[] prefix(HttpStatus status, String error) {
+        Prefix prefix = prefixes.get(error);
+        if (prefix != null && prefix.status == status) {
+            return prefix.bytes;
+        }
+        byte[] bytes = ("\"status\":" + status.value() + ",\"error\":" + new String(quote(error), StandardCharsets.UTF_8))
+                .getBytes(StandardCharsets.UTF_8);
+        // El mismo nombre de error con otro estado no se cachea, para no pisar el del tipo habitual
+        if (prefix == null) {
+            prefixes.putIfAbsent(error, new Prefix(status, bytes));
+        }
+        return bytes;
+    }
+
+    private byte[] timestamp() {
+        long now = System.currentTimeMillis();
+        Timestamp current = timestamp;
+        if (current.millis == now) {
+            return current.bytes;
+        }
+        byte[] bytes = TIMESTAMP_FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(now), zone))
+                .getBytes(StandardCharsets.US_ASCII);
+        timestamp = new Timestamp(now, bytes);
+        return bytes;
+    }
+
+    private static byte[] quote(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        byte[] escaped = JsonStringEncoder.getInstance().quoteAsUTF8(value);
+        byte[] quoted = new byte[escaped.length + 2];
+        quoted[0] = '"';
+        System.arraycopy(escaped, 0, quoted, 1, escaped.length);
+        quoted[quoted.length - 1] = '"';
+        return quoted;
+    }
+
+    private static int put(byte[] target, int pos, byte[] part) {
+        System.arraycopy(part, 0, target, pos, part.length);
+        return pos + part.length;
+    }
+
+    private record Prefix(HttpStatus status, byte[] bytes) {
+    }
+
+    private record Timestamp(long millis, byte[] bytes) {
+    }
+}
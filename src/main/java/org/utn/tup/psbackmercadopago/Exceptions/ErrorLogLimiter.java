@@ -0,0 +1,53 @@
+package org.utn.tup.psbackmercadopago.Exceptions;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limita cuántas veces por intervalo se loguea cada tipo de error. Durante una caída de
+ * MercadoPago evita que formatear y escribir miles de logs idénticos domine el uso de CPU.
+ */
+public class ErrorLogLimiter {
+
+    /** Valor devuelto por {@link #acquire(Class)} cuando el log debe omitirse. */
+    public static final long SUPPRESS = -1;
+
+    private final int maxPerInterval;
+    private final long intervalNanos;
+    private final Map<Class<?>, Window> windows = new ConcurrentHashMap<>();
+
+    public ErrorLogLimiter(int maxPerInterval, long intervalMillis) {
+        this.maxPerInterval = maxPerInterval;
+        this.intervalNanos = intervalMillis * 1_000_000L;
+    }
+
+    /**
+     * @return {@link #SUPPRESS} si ya se alcanzó el máximo del intervalo; si no, la cantidad de
+     * errores del mismo tipo omitidos desde el último log
+     */
+    public long acquire(Class<?> type) {
+        Window window = windows.computeIfAbsent(type, key -> new Window(System.nanoTime()));
+        long now = System.nanoTime();
+        long start = window.start.get();
+        if (now - start >= intervalNanos && window.start.compareAndSet(start, now)) {
+            window.count.set(0);
+        }
+        if (window.count.incrementAndGet() > maxPerInterval) {
+            window.suppressed.incrementAndGet();
+            return SUPPRESS;
+        }
+        return window.suppressed.getAndSet(0);
+    }
+
+    private static final class Window {
+        private final AtomicLong start;
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicLong suppressed = new AtomicLong();
+
+        private Window(long start) {
+            this.start = new AtomicLong(start);
+        }
+    }
+}
@@ -1,14 +1,15 @@
 package org.utn.tup.psbackmercadopago.Exceptions;
 
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
-import org.springframework.web.context.request.WebRequest;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
@@ -18,26 +19,31 @@ import java.util.Map;
 @RestControllerAdvice
 public class GlobalExceptionHandler {
 
-    @ExceptionHandler(PaymentProcessingException.class)
-    public ResponseEntity<ErrorResponse> handlePaymentProcessingException(
-            PaymentProcessingException ex, WebRequest request) {
-
-        log.error("Payment processing error: ", ex);
+    // Como máximo 10 logs por segundo de cada tipo de error
+    private final ErrorLogLimiter logLimiter = new ErrorLogLimiter(10, 1000);
+    private final ErrorBodyWriter bodyWriter = new ErrorBodyWriter();
 
-        ErrorResponse errorResponse = ErrorResponse.builder()
-                .timestamp(LocalDateTime.now())
-                .status(HttpStatus.INTERNAL_SERVER_ERROR.value())
-                .error("Payment Processing Error")
-                .message(ex.getMessage())
-                .path(request.getDescription(false).replace("uri=", ""))
-                .build();
+    @ExceptionHandler(PaymentProcessingException.class)
+    public ResponseEntity<byte[]> handlePaymentProcessingException(
+            PaymentProcessingException ex, HttpServletRequest request) {
+
+        long suppressed = logLimiter.acquire(ex.getClass());
+        if (suppressed != ErrorLogLimiter.SUPPRESS) {
+            if (ex.isExpected()) {
+                // Fallas esperadas: sin stack trace
+                log.warn("{} on {}: {} (cause: {}, suppressed since last log: {})",
+                        ex.getError(), request.getRequestURI(), ex.getMessage(), ex.getCause(), suppressed);
+            } else {
+                log.error("Payment processing error (suppressed since last log: {}): ", suppressed, ex);
+            }
+        }
 
-        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        return buildResponse(ex.getStatus(), ex.getError(), ex.getMessage(), request);
     }
 
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<ErrorResponse> handleValidationExceptions(
-            MethodArgumentNotValidException ex, WebRequest request) {
+            MethodArgumentNotValidException ex, HttpServletRequest request) {
 
         Map<String, String> validationErrors = new HashMap<>();
         ex.getBindingResult().getAllErrors().forEach((error) -> {
@@ -48,50 +54,56 @@ public class GlobalExceptionHandler {
 
         log.warn("Validation error: {}", validationErrors);
 
-        ErrorResponse errorResponse = ErrorResponse.builder()
-                .timestamp(LocalDateTime.now())
-                .status(HttpStatus.BAD_REQUEST.value())
-                .error("Validation Error")
-                .message("Datos de entrada inválidos")
-                .path(request.getDescription(false).replace("uri=", ""))
-                .validationErrors(validationErrors)
-                .build();
-
-        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+        return buildResponse(HttpStatus.BAD_REQUEST, "Validation Error", "Datos de entrada inválidos",
+                request, validationErrors);
     }
 
     @ExceptionHandler(IllegalArgumentException.class)
-    public ResponseEntity<ErrorResponse> handleIllegalArgumentException(
-            IllegalArgumentException ex, WebRequest request) {
-
-        log.error("Illegal argument error: ", ex);
+    public ResponseEntity<byte[]> handleIllegalArgumentException(
+            IllegalArgumentException ex, HttpServletRequest request) {
 
-        ErrorResponse errorResponse = ErrorResponse.builder()
-                .timestamp(LocalDateTime.now())
-                .status(HttpStatus.BAD_REQUEST.value())
-                .error("Bad Request")
-                .message(ex.getMessage())
-                .path(request.getDescription(false).replace("uri=", ""))
-                .build();
+        long suppressed = logLimiter.acquire(ex.getClass());
+        if (suppressed != ErrorLogLimiter.SUPPRESS) {
+            log.error("Illegal argument error (suppressed since last log: {}): ", suppressed, ex);
+        }
 
-        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+        return buildResponse(HttpStatus.BAD_REQUEST, "Bad Request", ex.getMessage(), request);
     }
 
     @ExceptionHandler(Exception.class)
-    public ResponseEntity<ErrorResponse> handleGenericException(
-            Exception ex, WebRequest request) {
+    public ResponseEntity<byte[]> handleGenericException(
+            Exception ex, HttpServletRequest request) {
 
-        log.error("Unexpected error: ", ex);
+        long suppressed = logLimiter.acquire(ex.getClass());
+        if (suppressed != ErrorLogLimiter.SUPPRESS) {
+            log.error("Unexpected error (suppressed since last log: {}): ", suppressed, ex);
+        }
+
+        return buildResponse(HttpStatus.INTERNAL_SERVER_ERROR, "Internal Server Error",
+                "Ha ocurrido un error inesperado", request);
+    }
 
+    // Camino frecuente (errores de MercadoPago): cuerpo armado sin Jackson, mismo formato que ErrorResponse
+    private ResponseEntity<byte[]> buildResponse(HttpStatus status, String error, String message,
+                                                 HttpServletRequest request) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(bodyWriter.write(status, error, message, request.getRequestURI()));
+    }
+
+    private static ResponseEntity<ErrorResponse> buildResponse(HttpStatus status, String error, String message,
+                                                               HttpServletRequest request,
+                                                               Map<String, String> validationErrors) {
         ErrorResponse errorResponse = ErrorResponse.builder()
                 .timestamp(LocalDateTime.now())
-                .status(HttpStatus.INTERNAL_SERVER_ERROR.value())
-                .error("Internal Server Error")
-                .message("Ha ocurrido un error inesperado")
-                .path(request.getDescription(false).replace("uri=", ""))
+                .status(status.value())
+                .error(error)
+                .message(message)
+                .path(request.getRequestURI())
+                .validationErrors(validationErrors)
                 .build();
 
-        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        return ResponseEntity.status(status).body(errorResponse);
     }
 
     @Getter
@@ -0,0 +1,42 @@
+package org.utn.tup.psbackmercadopago.Exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Una {@code Idempotency-Key} que no se puede atender: la donación con esa clave todavía se está
+ * creando (409) o la clave ya se usó con otro cuerpo (422).
+ */
+public class IdempotencyConflictException extends PaymentProcessingException {
+
+    private final HttpStatus status;
+
+    private IdempotencyConflictException(String message, HttpStatus status) {
+        super(message, null, false);
+        this.status = status;
+    }
+
+    public static IdempotencyConflictException inProgress(String idempotencyKey) {
+        return new IdempotencyConflictException(
+                "La donación con la clave " + idempotencyKey + " todavía se está procesando", HttpStatus.CONFLICT);
+    }
+
+    public static IdempotencyConflictException differentRequest(String idempotencyKey) {
+        return new IdempotencyConflictException(
+                "La clave " + idempotencyKey + " ya se usó con otra donación", HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @Override
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    @Override
+    public String getError() {
+        return status.getReasonPhrase();
+    }
+
+    @Override
+    public boolean isExpected() {
+        return true;
+    }
+}
@@ -0,0 +1,28 @@
+package org.utn.tup.psbackmercadopago.Exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * El pago consultado no existe en MercadoPago.
+ */
+public class PaymentNotFoundException extends PaymentProcessingException {
+
+    public PaymentNotFoundException(String message) {
+        super(message, null, false);
+    }
+
+    @Override
+    public HttpStatus getStatus() {
+        return HttpStatus.NOT_FOUND;
+    }
+
+    @Override
+    public String getError() {
+        return "Not Found";
+    }
+
+    @Override
+    public boolean isExpected() {
+        return true;
+    }
+}
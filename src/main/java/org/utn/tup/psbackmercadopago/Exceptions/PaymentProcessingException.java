@@ -1,5 +1,11 @@
 package org.utn.tup.psbackmercadopago.Exceptions;
 
+import org.springframework.http.HttpStatus;
+
+/**
+ * Error base del procesamiento de pagos. Las subclases representan fallas esperadas
+ * (validación, recurso inexistente, MercadoPago caído) y no capturan stack trace.
+ */
 public class PaymentProcessingException extends RuntimeException {
 
     public PaymentProcessingException(String message) {
@@ -9,4 +15,23 @@ public class PaymentProcessingException extends RuntimeException {
     public PaymentProcessingException(String message, Throwable cause) {
         super(message, cause);
     }
-}
\ No newline at end of file
+
+    protected PaymentProcessingException(String message, Throwable cause, boolean writableStackTrace) {
+        super(message, cause, false, writableStackTrace);
+    }
+
+    public HttpStatus getStatus() {
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    public String getError() {
+        return "Payment Processing Error";
+    }
+
+    /**
+     * @return true si es una falla esperada, que se loguea sin stack trace
+     */
+    public boolean isExpected() {
+        return false;
+    }
+}
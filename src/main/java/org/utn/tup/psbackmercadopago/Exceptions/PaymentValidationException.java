@@ -0,0 +1,28 @@
+package org.utn.tup.psbackmercadopago.Exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Datos de entrada inválidos para la operación de pago (por ejemplo, un ID no numérico).
+ */
+public class PaymentValidationException extends PaymentProcessingException {
+
+    public PaymentValidationException(String message) {
+        super(message, null, false);
+    }
+
+    @Override
+    public HttpStatus getStatus() {
+        return HttpStatus.BAD_REQUEST;
+    }
+
+    @Override
+    public String getError() {
+        return "Bad Request";
+    }
+
+    @Override
+    public boolean isExpected() {
+        return true;
+    }
+}
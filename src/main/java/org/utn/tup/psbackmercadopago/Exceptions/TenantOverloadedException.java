@@ -0,0 +1,28 @@
+package org.utn.tup.psbackmercadopago.Exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * La cuenta alcanzó su límite de llamadas concurrentes a MercadoPago.
+ */
+public class TenantOverloadedException extends PaymentProcessingException {
+
+    public TenantOverloadedException(String message) {
+        super(message, null, false);
+    }
+
+    @Override
+    public HttpStatus getStatus() {
+        return HttpStatus.SERVICE_UNAVAILABLE;
+    }
+
+    @Override
+    public String getError() {
+        return "Service Unavailable";
+    }
+
+    @Override
+    public boolean isExpected() {
+        return true;
+    }
+}
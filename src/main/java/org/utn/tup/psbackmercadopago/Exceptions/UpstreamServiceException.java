@@ -0,0 +1,35 @@
+package org.utn.tup.psbackmercadopago.Exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * MercadoPago respondió con error o no respondió. El detalle queda en la causa.
+ */
+public class UpstreamServiceException extends PaymentProcessingException {
+
+    private final int upstreamStatus;
+
+    public UpstreamServiceException(String message, int upstreamStatus, Throwable cause) {
+        super(message, cause, false);
+        this.upstreamStatus = upstreamStatus;
+    }
+
+    public int getUpstreamStatus() {
+        return upstreamStatus;
+    }
+
+    @Override
+    public HttpStatus getStatus() {
+        return HttpStatus.BAD_GATEWAY;
+    }
+
+    @Override
+    public String getError() {
+        return "Upstream Service Error";
+    }
+
+    @Override
+    public boolean isExpected() {
+        return true;
+    }
+}
@@ -0,0 +1,86 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Cancelación real de una llamada HTTP en curso.
+ * <p>
+ * Interrumpir el hilo no alcanza: la lectura bloqueante del socket de Apache HttpClient ignora las
+ * interrupciones y la llamada seguiría ocupando su conexión (y el permiso de la cuenta) hasta el
+ * timeout. Por eso quien ejecuta la llamada la corre dentro de {@link #run}, la capa HTTP registra
+ * cómo abortarla con {@link #register} (ver {@link #httpInterceptor()}) y {@link #cancel()} la aborta
+ * desde otro hilo, cerrando el socket.
+ */
+public final class CallCancellation {
+
+    private static final ThreadLocal<CallCancellation> CURRENT = new ThreadLocal<>();
+
+    private Runnable abort;
+    private boolean cancelled;
+    private boolean done;
+
+    public <T> T run(Callable<T> call) throws Exception {
+        CallCancellation previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return call.call();
+        } finally {
+            CURRENT.set(previous);
+            synchronized (this) {
+                done = true;
+                abort = null;
+            }
+        }
+    }
+
+    /**
+     * Aborta la llamada si todavía está en curso. Si aún no se registró, se aborta apenas se registre.
+     */
+    public void cancel() {
+        Runnable toRun;
+        synchronized (this) {
+            if (done || cancelled) {
+                return;
+            }
+            cancelled = true;
+            toRun = abort;
+        }
+        if (toRun != null) {
+            toRun.run();
+        }
+    }
+
+    /**
+     * Registra cómo abortar la llamada que está por hacer el hilo actual. Sin efecto fuera de {@link #run}.
+     */
+    public static void register(Runnable abort) {
+        CallCancellation current = CURRENT.get();
+        if (current == null) {
+            return;
+        }
+        boolean abortNow;
+        synchronized (current) {
+            current.abort = abort;
+            abortNow = current.cancelled;
+        }
+        if (abortNow) {
+            abort.run();
+        }
+    }
+
+    /**
+     * Interceptor para Apache HttpClient que registra el {@link HttpUriRequest#abort()} del pedido.
+     */
+    public static HttpRequestInterceptor httpInterceptor() {
+        return (request, context) -> {
+            Object original = request instanceof HttpRequestWrapper wrapper ? wrapper.getOriginal() : request;
+            if (original instanceof HttpUriRequest uriRequest) {
+                register(uriRequest::abort);
+            }
+        };
+    }
+}
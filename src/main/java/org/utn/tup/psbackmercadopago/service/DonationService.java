@@ -1,56 +1,77 @@
 package org.utn.tup.psbackmercadopago.service;
 
-import com.mercadopago.MercadoPagoConfig;
 import com.mercadopago.client.preference.*;
 import com.mercadopago.exceptions.MPApiException;
 import com.mercadopago.exceptions.MPException;
 import com.mercadopago.resources.preference.Preference;
 import com.mercadopago.resources.preference.PreferenceBackUrls;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.utn.tup.psbackmercadopago.Exceptions.IdempotencyConflictException;
 import org.utn.tup.psbackmercadopago.Exceptions.PaymentProcessingException;
+import org.utn.tup.psbackmercadopago.Exceptions.UpstreamServiceException;
 import org.utn.tup.psbackmercadopago.dto.DonationRequestDto;
 import org.utn.tup.psbackmercadopago.dto.DonationResponseDto;
 
-import jakarta.annotation.PostConstruct;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.util.Collections;
-import java.util.UUID;
+import java.util.Optional;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class DonationService {
 
+    private final PaymentReferenceIndex referenceIndex;
+    private final ExternalReferenceGenerator referenceGenerator;
+    private final TenantRegistry tenantRegistry;
+    private final SharedPaymentState sharedState;
+
     @Value("${app.base-url}")
     private String baseUrl;
 
     @Value("${app.frontend-url}")
     private String frontendUrl;
 
-    @Value("${mercadopago.access.token}")
-    private String accessToken;
-
-    private PreferenceClient preferenceClient;
+    /**
+     * Crea la donación una sola vez por {@code idempotencyKey} en todas las réplicas: un reintento
+     * con la misma clave y el mismo cuerpo devuelve la preferencia ya creada.
+     *
+     * @throws IdempotencyConflictException si la donación con esa clave todavía se está creando o
+     * la clave ya se usó con otro cuerpo
+     */
+    public DonationResponseDto createDonation(DonationRequestDto request, String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return createDonation(request);
+        }
+        String requestHash = sharedState.requestHash(request);
+        Optional<SharedPaymentState.IdempotencyRecord> existing =
+                sharedState.claimDonation(idempotencyKey, requestHash);
+        if (existing.isPresent()) {
+            SharedPaymentState.IdempotencyRecord record = existing.get();
+            if (!requestHash.equals(record.requestHash())) {
+                throw IdempotencyConflictException.differentRequest(idempotencyKey);
+            }
+            if (record.isPending()) {
+                throw IdempotencyConflictException.inProgress(idempotencyKey);
+            }
+            log.info("Returning existing donation for idempotency key: {}", idempotencyKey);
+            return record.donation();
+        }
 
-    @PostConstruct
-    public void init() {
+        DonationResponseDto created;
         try {
-            // NO configurar aquí el AccessToken porque ya se hace en MercadoPagoConfiguration
-            // Solo configurar timeouts adicionales si es necesario
-            MercadoPagoConfig.setConnectionTimeout(5000);
-            MercadoPagoConfig.setSocketTimeout(10000);
-
-            // Inicializar el cliente
-            this.preferenceClient = new PreferenceClient();
-
-            log.info("MercadoPago SDK initialized successfully");
-        } catch (Exception e) {
-            log.error("Error initializing MercadoPago SDK", e);
-            throw new RuntimeException("Failed to initialize MercadoPago SDK", e);
+            created = createDonation(request);
+        } catch (RuntimeException e) {
+            sharedState.releaseDonation(idempotencyKey);
+            throw e;
         }
+        sharedState.completeDonation(idempotencyKey, requestHash, created);
+        return created;
     }
 
     public DonationResponseDto createDonation(DonationRequestDto request) {
@@ -58,13 +79,8 @@ public class DonationService {
             log.info("Creating donation preference for amount: {} and payer: {}",
                     request.getAmount(), request.getPayerEmail());
 
-            // Validar que el SDK esté inicializado
-            if (preferenceClient == null) {
-                throw new PaymentProcessingException("MercadoPago client not initialized");
-            }
-
             // Generar referencia externa única
-            String externalReference = "DONATION-" + UUID.randomUUID().toString().substring(0, 8);
+            String externalReference = referenceGenerator.next();
 
             // Crear item de la preferencia - MÍNIMO REQUERIDO
             PreferenceItemRequest item = PreferenceItemRequest.builder()
@@ -92,11 +108,15 @@ public class DonationService {
 
             log.info("Creating minimal preference with external reference: {}", externalReference);
 
-            // Crear preferencia en MercadoPago
-            Preference preference = preferenceClient.create(preferenceRequest);
+            // Crear preferencia en MercadoPago con las credenciales de la cuenta del pedido
+            MercadoPagoTenant tenant = tenantRegistry.current();
+            Preference preference = tenant.call(() ->
+                    tenant.getPreferenceClient().create(preferenceRequest, tenant.getRequestOptions()));
 
             log.info("Donation preference created successfully with ID: {}", preference.getId());
 
+            referenceIndex.recordPreference(externalReference, preference.getId());
+
             // Construir respuesta
             return DonationResponseDto.builder()
                     .preferenceId(preference.getId())
@@ -109,10 +129,14 @@ public class DonationService {
                     .createdAt(LocalDateTime.now())
                     .build();
 
+        } catch (PaymentProcessingException e) {
+            throw e;
         } catch (MPApiException e) {
-            log.error("MercadoPago API Error: Status: {}, Content: {}",
-                    e.getStatusCode(), e.getApiResponse().getContent(), e);
-            throw new PaymentProcessingException("Error de API de MercadoPago: " + e.getMessage(), e);
+            log.warn("MercadoPago API Error: Status: {}, Content: {}",
+                    e.getStatusCode(), e.getApiResponse().getContent());
+            throw new UpstreamServiceException("Error de API de MercadoPago: " + e.getMessage(), e.getStatusCode(), e);
+        } catch (MPException e) {
+            throw new UpstreamServiceException("Error de comunicación con MercadoPago: " + e.getMessage(), 0, e);
         } catch (Exception e) {
             log.error("Unexpected error creating donation preference", e);
             throw new PaymentProcessingException("Error inesperado al crear la preferencia de pago: " + e.getMessage(), e);
@@ -0,0 +1,24 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import java.util.OptionalLong;
+
+/**
+ * Genera las referencias externas que se envían a MercadoPago al crear una preferencia.
+ */
+public interface ExternalReferenceGenerator {
+
+    /**
+     * @return una referencia única, ordenable por momento de creación
+     */
+    String next();
+
+    /**
+     * Representación compacta de una referencia emitida por este generador, para usarla como clave
+     * en memoria.
+     *
+     * @return vacío si la referencia no tiene el formato del generador
+     */
+    default OptionalLong decode(String reference) {
+        return OptionalLong.empty();
+    }
+}
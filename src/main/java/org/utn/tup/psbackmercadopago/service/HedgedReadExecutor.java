@@ -0,0 +1,283 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ejecuta lecturas idempotentes contra MercadoPago con "hedging": si la primera llamada no responde
+ * dentro de un umbral adaptativo (el percentil observado, por defecto p95), se lanza una segunda
+ * idéntica, gana la primera respuesta exitosa y la otra se cancela.
+ * <p>
+ * El umbral y el presupuesto son por cuenta: una cuenta lenta no sube el umbral de las demás ni les
+ * gasta el presupuesto. Cada lectura suma {@code budgetRatio} créditos a su cuenta y cada hedge
+ * consume uno, así que con 0.1 se agrega como máximo un 10% de llamadas por cuenta. Las métricas
+ * llevan el tag {@code tenant}.
+ * <p>
+ * La llamada perdedora se aborta con {@link CallCancellation}, que cierra su socket: interrumpir el
+ * hilo no detiene una lectura bloqueante de HttpClient. El pool debe ser acotado; si está lleno la
+ * lectura corre en el hilo del pedido y no se hace hedge.
+ */
+@Slf4j
+public class HedgedReadExecutor implements AutoCloseable {
+
+    private static final int SAMPLE_SIZE = 1024;
+    private static final int RECOMPUTE_EVERY = 128;
+    private static final int MIN_SAMPLES = 32;
+    private static final long CREDIT_UNIT = 1000;
+    private static final long MAX_CREDITS = 10 * CREDIT_UNIT;
+
+    private final boolean enabled;
+    private final ExecutorService executor;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final long creditPerRead;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, TenantHedging> tenants = new ConcurrentHashMap<>();
+
+    public HedgedReadExecutor(boolean enabled, ExecutorService executor, double percentile,
+                              Duration minDelay, Duration maxDelay, double budgetRatio,
+                              MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.executor = executor;
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.creditPerRead = Math.round(budgetRatio * CREDIT_UNIT);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param tenantId cuenta de MercadoPago a la que va la lectura; define el umbral y el presupuesto
+     */
+    public <T> T call(String tenantId, Callable<T> read) throws Exception {
+        if (!enabled) {
+            return read.call();
+        }
+
+        TenantHedging state = tenants.computeIfAbsent(tenantId, TenantHedging::new);
+        state.reads.increment();
+        state.credits.getAndUpdate(c -> Math.min(MAX_CREDITS, c + creditPerRead));
+
+        ExecutorCompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        Attempt<T> primaryAttempt = state.attempt(read, true);
+        Future<T> primary;
+        try {
+            primary = completion.submit(primaryAttempt);
+        } catch (RejectedExecutionException e) {
+            // Pool lleno: la lectura sigue en el hilo del pedido, sin hedge
+            state.rejected.increment();
+            return read.call();
+        }
+
+        Attempt<T> hedgeAttempt = state.attempt(read, false);
+        Future<T> hedge = null;
+        try {
+            Future<T> first = completion.poll(state.thresholdNanos, TimeUnit.NANOSECONDS);
+            if (first == null) {
+                if (state.tryAcquireCredit()) {
+                    try {
+                        hedge = completion.submit(hedgeAttempt);
+                        state.hedges.increment();
+                    } catch (RejectedExecutionException e) {
+                        state.rejected.increment();
+                    }
+                } else {
+                    state.budgetExhausted.increment();
+                }
+                first = completion.take();
+            }
+
+            // Si la primera en terminar falló y hay otra en curso, se espera a la otra
+            if (hedge != null && failed(first)) {
+                first = completion.take();
+            }
+            if (first == hedge) {
+                state.hedgeWins.increment();
+            }
+            return first.get();
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            throw (Error) cause;
+        } finally {
+            // Abortar el pedido HTTP libera la conexión y el permiso de la cuenta; la interrupción sola no
+            primaryAttempt.abort();
+            primary.cancel(true);
+            if (hedge != null) {
+                hedgeAttempt.abort();
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    long currentThresholdNanos(String tenantId) {
+        TenantHedging state = tenants.get(tenantId);
+        return state != null ? state.thresholdNanos : maxDelayNanos;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static boolean failed(Future<?> future) {
+        try {
+            future.get();
+            return false;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    /**
+     * Latencias observadas, umbral, créditos y métricas de una cuenta.
+     */
+    private class TenantHedging {
+
+        private final String tenantId;
+        private final AtomicLongArray samples = new AtomicLongArray(SAMPLE_SIZE);
+        private final AtomicLong sampleCount = new AtomicLong();
+        private final AtomicLong credits = new AtomicLong(MAX_CREDITS);
+        private volatile long thresholdNanos = maxDelayNanos;
+
+        private final Counter reads;
+        private final Counter hedges;
+        private final Counter hedgeWins;
+        private final Counter budgetExhausted;
+        private final Counter rejected;
+
+        TenantHedging(String tenantId) {
+            this.tenantId = tenantId;
+            this.reads = Counter.builder("mp.payment.hedge.reads")
+                    .description("Lecturas a MercadoPago que pasaron por el hedging")
+                    .tag("tenant", tenantId)
+                    .register(meterRegistry);
+            this.hedges = Counter.builder("mp.payment.hedge.fired")
+                    .description("Lecturas duplicadas por superar el umbral")
+                    .tag("tenant", tenantId)
+                    .register(meterRegistry);
+            this.hedgeWins = Counter.builder("mp.payment.hedge.wins")
+                    .description("Lecturas en las que respondió primero el hedge")
+                    .tag("tenant", tenantId)
+                    .register(meterRegistry);
+            this.budgetExhausted = Counter.builder("mp.payment.hedge.budget.exhausted")
+                    .description("Hedges no lanzados por falta de presupuesto")
+                    .tag("tenant", tenantId)
+                    .register(meterRegistry);
+            this.rejected = Counter.builder("mp.payment.hedge.rejected")
+                    .description("Lecturas que no entraron en el pool de hedging y corrieron sin hedge")
+                    .tag("tenant", tenantId)
+                    .register(meterRegistry);
+            Gauge.builder("mp.payment.hedge.threshold", this, s -> s.thresholdNanos / 1_000_000.0)
+                    .description("Umbral actual de hedging en milisegundos")
+                    .tag("tenant", tenantId)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+        }
+
+        boolean tryAcquireCredit() {
+            long current;
+            do {
+                current = credits.get();
+                if (current < CREDIT_UNIT) {
+                    return false;
+                }
+            } while (!credits.compareAndSet(current, current - CREDIT_UNIT));
+            return true;
+        }
+
+        <T> Attempt<T> attempt(Callable<T> read, boolean primary) {
+            return new Attempt<>(this, read, primary);
+        }
+
+        void recordLatency(long nanos) {
+            long count = sampleCount.incrementAndGet();
+            samples.set((int) ((count - 1) % SAMPLE_SIZE), nanos);
+            if (count == MIN_SAMPLES || (count > MIN_SAMPLES && count % RECOMPUTE_EVERY == 0)) {
+                recomputeThreshold((int) Math.min(count, SAMPLE_SIZE));
+            }
+        }
+
+        private void recomputeThreshold(int size) {
+            long[] snapshot = new long[size];
+            for (int i = 0; i < size; i++) {
+                snapshot[i] = samples.get(i);
+            }
+            Arrays.sort(snapshot);
+            long observed = snapshot[(int) Math.min(size - 1, Math.ceil(percentile * size) - 1)];
+            thresholdNanos = Math.max(minDelayNanos, Math.min(maxDelayNanos, observed));
+            log.debug("Hedging threshold for tenant {} updated to {} ms", tenantId, thresholdNanos / 1_000_000.0);
+        }
+    }
+
+    /**
+     * Un intento de la lectura. Su latencia se registra al terminar bien; si el primario se aborta
+     * todavía en curso (perdió contra el hedge) se registra el tiempo transcurrido hasta el aborto como
+     * muestra censurada: la latencia real fue al menos esa. Sin ella solo quedarían las respuestas
+     * rápidas y el umbral bajaría solo, disparando cada vez más hedges. El hedge perdedor no aporta
+     * muestra porque arrancó tarde y su tiempo no dice nada de la cola.
+     */
+    private static final class Attempt<T> implements Callable<T> {
+
+        private static final long NOT_STARTED = Long.MIN_VALUE;
+
+        private final TenantHedging state;
+        private final Callable<T> read;
+        private final boolean primary;
+        private final CallCancellation cancellation = new CallCancellation();
+        private final AtomicBoolean recorded = new AtomicBoolean();
+        private volatile long startNanos = NOT_STARTED;
+
+        Attempt(TenantHedging state, Callable<T> read, boolean primary) {
+            this.state = state;
+            this.read = read;
+            this.primary = primary;
+        }
+
+        @Override
+        public T call() throws Exception {
+            startNanos = System.nanoTime();
+            T result;
+            try {
+                result = cancellation.run(read);
+            } catch (Exception e) {
+                recorded.set(true);
+                throw e;
+            }
+            if (recorded.compareAndSet(false, true)) {
+                state.recordLatency(System.nanoTime() - startNanos);
+            }
+            return result;
+        }
+
+        void abort() {
+            long start = startNanos;
+            if (primary && start != NOT_STARTED && recorded.compareAndSet(false, true)) {
+                state.recordLatency(System.nanoTime() - start);
+            }
+            cancellation.cancel();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import com.mercadopago.exceptions.MPApiException;
+import com.mercadopago.exceptions.MPException;
+import org.utn.tup.psbackmercadopago.Exceptions.PaymentNotFoundException;
+import org.utn.tup.psbackmercadopago.Exceptions.PaymentProcessingException;
+import org.utn.tup.psbackmercadopago.Exceptions.UpstreamServiceException;
+
+/**
+ * Traduce los errores del SDK de MercadoPago a la jerarquía de {@link PaymentProcessingException}.
+ */
+final class MercadoPagoErrors {
+
+    private MercadoPagoErrors() {
+    }
+
+    static PaymentProcessingException translate(String message, Exception e) {
+        if (e instanceof PaymentProcessingException processingException) {
+            return processingException;
+        }
+        if (e instanceof MPApiException apiException) {
+            if (apiException.getStatusCode() == 404) {
+                return new PaymentNotFoundException(message + ": recurso inexistente en MercadoPago");
+            }
+            return new UpstreamServiceException(message, apiException.getStatusCode(), e);
+        }
+        if (e instanceof MPException) {
+            return new UpstreamServiceException(message, 0, e);
+        }
+        return new PaymentProcessingException(message, e);
+    }
+}
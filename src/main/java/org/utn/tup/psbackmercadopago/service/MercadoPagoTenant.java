@@ -0,0 +1,147 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import com.mercadopago.client.payment.PaymentClient;
+import com.mercadopago.client.preference.PreferenceClient;
+import com.mercadopago.core.MPRequestOptions;
+import com.mercadopago.net.KeepAliveStrategy;
+import com.mercadopago.net.MPDefaultHttpClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.HttpClient;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.ssl.SSLContexts;
+import org.utn.tup.psbackmercadopago.Config.TenantProperties;
+import org.utn.tup.psbackmercadopago.Exceptions.TenantOverloadedException;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Una cuenta de MercadoPago con sus propios clientes, pool de conexiones y límite de concurrencia.
+ * Las credenciales viajan en {@link MPRequestOptions} por pedido, no en {@code MercadoPagoConfig}.
+ */
+@Slf4j
+public class MercadoPagoTenant implements AutoCloseable {
+
+    @Getter
+    private final String id;
+    @Getter
+    private final MPRequestOptions requestOptions;
+    @Getter
+    private final PaymentClient paymentClient;
+    @Getter
+    private final PreferenceClient preferenceClient;
+    @Getter
+    private final WebhookSignatureVerifier webhookVerifier;
+
+    private final CloseableHttpClient httpClient;
+    private final Semaphore permits;
+    private final long acquireTimeoutNanos;
+
+    private final Timer requests;
+    private final Counter rejected;
+
+    MercadoPagoTenant(String id, TenantProperties.Tenant config, WebhookSignatureVerifier webhookVerifier,
+                      MeterRegistry meterRegistry) {
+        this.id = id;
+        this.webhookVerifier = webhookVerifier;
+        this.requestOptions = MPRequestOptions.builder()
+                .accessToken(config.getAccessToken())
+                .connectionTimeout(config.getConnectionTimeout())
+                .connectionRequestTimeout(config.getConnectionTimeout())
+                .socketTimeout(config.getSocketTimeout())
+                .build();
+
+        PoolingHttpClientConnectionManager connectionManager = createConnectionManager(config.getMaxConnections());
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(new KeepAliveStrategy())
+                .disableCookieManagement()
+                .disableRedirectHandling()
+                .setRetryHandler(new DefaultHttpRequestRetryHandler(3, false))
+                // Permite abortar el pedido perdedor de un hedge
+                .addInterceptorFirst(CallCancellation.httpInterceptor())
+                .build();
+        TenantHttpClient mpHttpClient = new TenantHttpClient(httpClient);
+        this.paymentClient = new PaymentClient(mpHttpClient);
+        this.preferenceClient = new PreferenceClient(mpHttpClient);
+
+        this.permits = new Semaphore(config.getMaxConcurrentRequests());
+        this.acquireTimeoutNanos = config.getAcquireTimeout().toNanos();
+
+        this.requests = Timer.builder("mp.tenant.requests")
+                .description("Llamadas a MercadoPago por cuenta")
+                .tag("tenant", id)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("mp.tenant.rejected")
+                .description("Llamadas rechazadas por superar el límite de concurrencia de la cuenta")
+                .tag("tenant", id)
+                .register(meterRegistry);
+        int maxConcurrent = config.getMaxConcurrentRequests();
+        Gauge.builder("mp.tenant.in_flight", permits, p -> maxConcurrent - p.availablePermits())
+                .description("Llamadas en curso a MercadoPago por cuenta")
+                .tag("tenant", id)
+                .register(meterRegistry);
+        Gauge.builder("mp.tenant.pool.leased", connectionManager, m -> m.getTotalStats().getLeased())
+                .description("Conexiones en uso del pool de la cuenta")
+                .tag("tenant", id)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ejecuta una llamada a MercadoPago dentro del límite de concurrencia de la cuenta, de modo que
+     * una cuenta lenta no acapare hilos ni conexiones de las demás.
+     */
+    public <T> T call(Callable<T> call) throws Exception {
+        if (!permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+            rejected.increment();
+            throw new TenantOverloadedException("Demasiadas solicitudes en curso para la cuenta " + id);
+        }
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } finally {
+            requests.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            permits.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            log.warn("Error closing HTTP client for tenant {}", id, e);
+        }
+    }
+
+    // Misma configuración que MPDefaultHttpClient, pero con un pool propio por cuenta
+    private static PoolingHttpClientConnectionManager createConnectionManager(int maxConnections) {
+        SSLConnectionSocketFactory socketFactory = new SSLConnectionSocketFactory(SSLContexts.createDefault(),
+                new String[]{"TLSv1.2"}, null, SSLConnectionSocketFactory.getDefaultHostnameVerifier());
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create().register("https", socketFactory).build());
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setValidateAfterInactivity(30000);
+        return connectionManager;
+    }
+
+    private static class TenantHttpClient extends MPDefaultHttpClient {
+        TenantHttpClient(HttpClient httpClient) {
+            super(httpClient);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.utn.tup.psbackmercadopago.dto.PaymentStatusDto;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coordina el trabajo de callbacks y webhooks con el ciclo de vida de la aplicación.
+ * <p>
+ * Al apagar deja de aceptar trabajo nuevo (readiness pasa a {@code REFUSING_TRAFFIC}), espera a que
+ * terminen las llamadas en curso a MercadoPago hasta {@code app.drain.timeout} y guarda lo que quede
+ * pendiente en {@code app.drain.spill-file}. Al arrancar, ese archivo se reprocesa en orden.
+ * Como se detiene en la fase más alta, el drenado ocurre antes de que se detenga el servidor web.
+ */
+@Slf4j
+@Component
+public class NotificationDrainCoordinator implements SmartLifecycle {
+
+    public enum WorkType {
+        WEBHOOK, CALLBACK
+    }
+
+    public record PendingWork(long sequence, long receivedAt, String tenantId, WorkType type, String paymentId,
+                              Map<String, String> params) {
+    }
+
+    private final PaymentService paymentService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+
+    private final Path spillFile;
+    private final Duration drainTimeout;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, PendingWork> inFlight = new ConcurrentSkipListMap<>();
+    private volatile boolean accepting;
+
+    private final Timer drainDuration;
+    private final Counter spilled;
+    private final Counter replayed;
+    private final Counter replayFailed;
+
+    public NotificationDrainCoordinator(PaymentService paymentService,
+                                        ApplicationEventPublisher eventPublisher,
+                                        ObjectMapper objectMapper,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${app.drain.spill-file:data/pending-notifications.jsonl}") Path spillFile,
+                                        @Value("${app.drain.timeout:PT20S}") Duration drainTimeout) {
+        this.paymentService = paymentService;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.spillFile = spillFile;
+        this.drainTimeout = drainTimeout;
+
+        this.drainDuration = Timer.builder("mp.drain.duration")
+                .description("Tiempo de drenado del trabajo pendiente al apagar")
+                .register(meterRegistry);
+        this.spilled = Counter.builder("mp.drain.spilled")
+                .description("Notificaciones guardadas en disco para reprocesar")
+                .register(meterRegistry);
+        this.replayed = Counter.builder("mp.drain.replayed")
+                .description("Notificaciones reprocesadas al arrancar")
+                .tag("result", "success")
+                .register(meterRegistry);
+        this.replayFailed = Counter.builder("mp.drain.replayed")
+                .description("Notificaciones reprocesadas al arrancar")
+                .tag("result", "failure")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Procesa una notificación de pago. Si la aplicación se está apagando la guarda en disco
+     * para reprocesarla al arrancar y devuelve vacío.
+     */
+    public Optional<PaymentStatusDto> process(WorkType type, String paymentId, Map<String, String> params) {
+        PendingWork work = new PendingWork(sequence.incrementAndGet(), System.currentTimeMillis(),
+                TenantContext.get(), type, paymentId, params);
+
+        // Se registra antes de mirar el flag para que stop() no pueda perderla
+        inFlight.put(work.sequence(), work);
+        try {
+            if (!accepting) {
+                log.warn("Draining, deferring {} work for payment ID: {}", type, paymentId);
+                spill(List.of(work));
+                return Optional.empty();
+            }
+            return Optional.of(execute(work, false));
+        } finally {
+            inFlight.remove(work.sequence());
+        }
+    }
+
+    public boolean isAccepting() {
+        return accepting;
+    }
+
+    @Override
+    public void start() {
+        accepting = true;
+    }
+
+    @Override
+    public void stop() {
+        if (!accepting) {
+            return;
+        }
+        accepting = false;
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+
+        long start = System.nanoTime();
+        long deadline = start + drainTimeout.toNanos();
+        log.info("Draining {} in-flight payment notifications (timeout {})", inFlight.size(), drainTimeout);
+
+        while (!inFlight.isEmpty() && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        List<PendingWork> pending = new ArrayList<>(inFlight.values());
+        if (!pending.isEmpty()) {
+            log.warn("Drain timeout reached, spilling {} unfinished payment notifications", pending.size());
+            spill(pending);
+        }
+        drainDuration.record(Duration.ofNanos(System.nanoTime() - start));
+        log.info("Payment notification drain finished in {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return accepting;
+    }
+
+    /**
+     * Reprocesa en segundo plano, en el orden en que se recibieron, las notificaciones guardadas
+     * en el apagado anterior. Las que vuelven a fallar se guardan de nuevo.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replaySpilledWork() {
+        Path replaying = spillFile.resolveSibling(spillFile.getFileName() + ".replaying");
+        List<PendingWork> works = new ArrayList<>();
+        synchronized (this) {
+            try {
+                // Un .replaying que quedó de un arranque interrumpido se reprocesa junto con lo nuevo
+                if (Files.exists(spillFile)) {
+                    if (Files.exists(replaying)) {
+                        Files.write(replaying, Files.readAllBytes(spillFile), StandardOpenOption.APPEND);
+                        Files.delete(spillFile);
+                    } else {
+                        Files.move(spillFile, replaying, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                if (!Files.exists(replaying)) {
+                    return;
+                }
+                for (String line : Files.readAllLines(replaying, StandardCharsets.UTF_8)) {
+                    if (!line.isBlank()) {
+                        works.add(objectMapper.readValue(line, PendingWork.class));
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Could not read spilled payment notifications from {}", replaying, e);
+                return;
+            }
+        }
+        works.sort(Comparator.comparingLong(PendingWork::receivedAt).thenComparingLong(PendingWork::sequence));
+
+        Thread replayThread = new Thread(() -> {
+            log.info("Replaying {} spilled payment notifications", works.size());
+            for (PendingWork work : works) {
+                try {
+                    execute(work, true);
+                    replayed.increment();
+                } catch (Exception e) {
+                    replayFailed.increment();
+                    log.warn("Replay failed for {} work, payment ID: {}: {}", work.type(), work.paymentId(), e.toString());
+                    spill(List.of(work));
+                }
+            }
+            try {
+                Files.deleteIfExists(replaying);
+            } catch (IOException e) {
+                log.warn("Could not delete {}", replaying, e);
+            }
+        }, "notification-replay");
+        replayThread.setDaemon(true);
+        replayThread.start();
+    }
+
+    /**
+     * @param replay en el reproceso un callback cuyo pago no se pudo consultar cuenta como fallido y se
+     *               vuelve a guardar; en vivo se responde al donante con los parámetros del redirect
+     */
+    private PaymentStatusDto execute(PendingWork work, boolean replay) {
+        // En el replay no hay pedido: la cuenta sale de lo guardado
+        String previousTenant = TenantContext.get();
+        TenantContext.set(work.tenantId());
+        try {
+            return switch (work.type()) {
+                case WEBHOOK -> paymentService.refreshPaymentStatus(work.paymentId());
+                case CALLBACK -> paymentService.processPaymentCallback(work.params(), replay);
+            };
+        } finally {
+            TenantContext.set(previousTenant);
+        }
+    }
+
+    private synchronized void spill(List<PendingWork> works) {
+        try {
+            Path parent = spillFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (PendingWork work : works) {
+                    writer.write(objectMapper.writeValueAsString(work));
+                    writer.newLine();
+                }
+            }
+            spilled.increment(works.size());
+        } catch (IOException e) {
+            log.error("Could not spill {} payment notifications to {}: {}", works.size(), spillFile, works, e);
+        }
+    }
+}
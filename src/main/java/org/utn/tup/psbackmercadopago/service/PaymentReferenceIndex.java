@@ -0,0 +1,263 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Índice local externalReference -> preferenceId -> paymentIds.
+ * <p>
+ * Se alimenta desde la creación de preferencias, los callbacks y los webhooks, de modo que
+ * el frontend pueda consultar el estado conociendo solo la referencia externa. Para acotar la
+ * memoria las referencias emitidas por {@link ExternalReferenceGenerator} se guardan como
+ * {@code Long}, el preferenceId como bytes ASCII y los ids de pago como {@code long[]}.
+ * <p>
+ * Cuando se supera {@code app.reference-index.max-entries} se desalojan las entradas terminales
+ * más viejas que {@code terminal-ttl} y las pendientes (checkouts abandonados) más viejas que
+ * {@code pending-ttl}; si aun así no alcanza, las menos recientes hasta el 90% de la capacidad.
+ * Así cada barrido deja margen y no se repite en cada inserción.
+ * <p>
+ * Las búsquedas sin resultado en MercadoPago se recuerdan {@code miss-ttl} para que el polling
+ * del frontend antes del pago no repita la búsqueda en cada consulta.
+ * <p>
+ * Las claves llevan la cuenta de {@link TenantContext}: las referencias que no emite el generador
+ * pueden repetirse entre cuentas y una búsqueda sin resultados en una cuenta no dice nada de otra.
+ */
+@Slf4j
+@Component
+public class PaymentReferenceIndex {
+
+    private static final long[] NO_PAYMENTS = new long[0];
+
+    private static final Set<String> TERMINAL_STATUSES =
+            Set.of("approved", "rejected", "cancelled", "refunded", "charged_back");
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final ExternalReferenceGenerator referenceGenerator;
+    private final int maxEntries;
+    private final int lowWaterMark;
+    private final long terminalTtlMillis;
+    private final long pendingTtlMillis;
+    private final long missTtlMillis;
+    private final LongSupplier clock;
+
+    @Autowired
+    public PaymentReferenceIndex(ExternalReferenceGenerator referenceGenerator,
+                                 @Value("${app.reference-index.max-entries:100000}") int maxEntries,
+                                 @Value("${app.reference-index.terminal-ttl:PT24H}") Duration terminalTtl,
+                                 @Value("${app.reference-index.pending-ttl:PT6H}") Duration pendingTtl,
+                                 @Value("${app.reference-index.miss-ttl:PT10S}") Duration missTtl) {
+        this(referenceGenerator, maxEntries, terminalTtl, pendingTtl, missTtl, System::currentTimeMillis);
+    }
+
+    PaymentReferenceIndex(ExternalReferenceGenerator referenceGenerator, int maxEntries, Duration terminalTtl,
+                          Duration pendingTtl, Duration missTtl, LongSupplier clock) {
+        this.referenceGenerator = referenceGenerator;
+        this.maxEntries = maxEntries;
+        this.lowWaterMark = maxEntries - Math.max(1, maxEntries / 10);
+        this.terminalTtlMillis = terminalTtl.toMillis();
+        this.pendingTtlMillis = pendingTtl.toMillis();
+        this.missTtlMillis = missTtl.toMillis();
+        this.clock = clock;
+    }
+
+    public void recordPreference(String externalReference, String preferenceId) {
+        if (isBlank(externalReference)) {
+            return;
+        }
+        long now = clock.getAsLong();
+        entries.compute(key(externalReference), (key, current) -> current == null
+                ? new Entry(compact(preferenceId), NO_PAYMENTS, false, now, 0)
+                : current.withPreference(preferenceId, now));
+        evictIfNeeded();
+    }
+
+    public void recordPayment(String externalReference, String preferenceId, long paymentId, String status) {
+        if (isBlank(externalReference)) {
+            return;
+        }
+        boolean terminal = isTerminal(status);
+        long now = clock.getAsLong();
+        entries.compute(key(externalReference), (key, current) -> current == null
+                ? new Entry(compact(preferenceId), new long[]{paymentId}, terminal, now, 0)
+                : current.withPreference(preferenceId, now).withPayment(paymentId, terminal, now));
+        evictIfNeeded();
+    }
+
+    /**
+     * Quita un pago que MercadoPago no reconoce, para que la próxima consulta vuelva a buscar.
+     */
+    public void removePayment(String externalReference, long paymentId) {
+        if (isBlank(externalReference)) {
+            return;
+        }
+        entries.computeIfPresent(key(externalReference), (key, current) -> current.withoutPayment(paymentId));
+    }
+
+    /**
+     * Registra que MercadoPago no tiene pagos para la referencia.
+     */
+    public void recordMiss(String externalReference) {
+        if (isBlank(externalReference)) {
+            return;
+        }
+        long now = clock.getAsLong();
+        entries.compute(key(externalReference), (key, current) -> current == null
+                ? new Entry(null, NO_PAYMENTS, false, now, now)
+                : current.withMiss(now));
+        evictIfNeeded();
+    }
+
+    /**
+     * @return true si la referencia no tiene pagos y se buscó en MercadoPago hace menos de {@code miss-ttl}
+     */
+    public boolean isRecentMiss(String externalReference) {
+        Entry entry = entries.get(key(externalReference));
+        return entry != null && entry.paymentIds.length == 0 && entry.missCheckedAt != 0
+                && clock.getAsLong() - entry.missCheckedAt < missTtlMillis;
+    }
+
+    /**
+     * Devuelve el último pago registrado para la referencia, o vacío si la referencia
+     * no se conoce o todavía no tiene pagos asociados.
+     */
+    public OptionalLong latestPaymentId(String externalReference) {
+        Entry entry = entries.get(key(externalReference));
+        if (entry == null || entry.paymentIds.length == 0) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(entry.paymentIds[entry.paymentIds.length - 1]);
+    }
+
+    /**
+     * @return los pagos registrados para la referencia en el orden en que se conocieron
+     */
+    public long[] paymentIds(String externalReference) {
+        Entry entry = entries.get(key(externalReference));
+        return entry != null ? entry.paymentIds.clone() : NO_PAYMENTS;
+    }
+
+    public String preferenceId(String externalReference) {
+        Entry entry = entries.get(key(externalReference));
+        return entry != null && entry.preferenceId != null
+                ? new String(entry.preferenceId, StandardCharsets.US_ASCII)
+                : null;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private Key key(String externalReference) {
+        String tenant = TenantContext.get();
+        OptionalLong compact = referenceGenerator.decode(externalReference);
+        return new Key(tenant != null ? tenant : TenantRegistry.DEFAULT_TENANT,
+                compact.isPresent() ? (Object) compact.getAsLong() : externalReference);
+    }
+
+    private void evictIfNeeded() {
+        if (entries.size() <= maxEntries || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int before = entries.size();
+            long now = clock.getAsLong();
+            entries.values().removeIf(entry -> entry.isExpired(now, terminalTtlMillis, pendingTtlMillis));
+
+            // Si con las vencidas no alcanza se descartan las menos recientes hasta dejar margen,
+            // de modo que el próximo barrido recién ocurra tras un 10% de inserciones nuevas
+            if (entries.size() > lowWaterMark) {
+                long[] updated = entries.values().stream().mapToLong(Entry::lastUpdated).sorted().toArray();
+                int excess = updated.length - lowWaterMark;
+                if (excess > 0) {
+                    long cutoff = updated[excess - 1];
+                    entries.values().removeIf(entry -> entry.lastUpdated < cutoff);
+                    // Empates en el corte: solo las necesarias
+                    Iterator<Entry> iterator = entries.values().iterator();
+                    while (entries.size() > lowWaterMark && iterator.hasNext()) {
+                        if (iterator.next().lastUpdated == cutoff) {
+                            iterator.remove();
+                        }
+                    }
+                }
+            }
+            log.debug("Reference index eviction: {} -> {} entries", before, entries.size());
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * @return true si el estado de pago ya no cambia (aprobado, rechazado, cancelado, etc.)
+     */
+    static boolean isTerminal(String status) {
+        return status != null && TERMINAL_STATUSES.contains(status);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static byte[] compact(String preferenceId) {
+        return preferenceId != null ? preferenceId.getBytes(StandardCharsets.US_ASCII) : null;
+    }
+
+    private record Key(String tenantId, Object reference) {
+    }
+
+    private record Entry(byte[] preferenceId, long[] paymentIds, boolean terminal, long lastUpdated,
+                         long missCheckedAt) {
+
+        boolean isExpired(long now, long terminalTtl, long pendingTtl) {
+            return now - lastUpdated >= (terminal ? terminalTtl : pendingTtl);
+        }
+
+        Entry withPreference(String newPreferenceId, long now) {
+            if (newPreferenceId == null || Arrays.equals(compact(newPreferenceId), preferenceId)) {
+                return this;
+            }
+            return new Entry(compact(newPreferenceId), paymentIds, terminal, now, missCheckedAt);
+        }
+
+        Entry withPayment(long paymentId, boolean nowTerminal, long now) {
+            for (long id : paymentIds) {
+                if (id == paymentId) {
+                    return new Entry(preferenceId, paymentIds, nowTerminal, now, 0);
+                }
+            }
+            long[] ids = Arrays.copyOf(paymentIds, paymentIds.length + 1);
+            ids[paymentIds.length] = paymentId;
+            return new Entry(preferenceId, ids, nowTerminal, now, 0);
+        }
+
+        Entry withoutPayment(long paymentId) {
+            long[] ids = Arrays.stream(paymentIds).filter(id -> id != paymentId).toArray();
+            if (ids.length == paymentIds.length) {
+                return this;
+            }
+            if (ids.length == 0 && preferenceId == null) {
+                return null;
+            }
+            return new Entry(preferenceId, ids.length == 0 ? NO_PAYMENTS : ids, ids.length > 0 && terminal,
+                    lastUpdated, missCheckedAt);
+        }
+
+        Entry withMiss(long now) {
+            return new Entry(preferenceId, paymentIds, terminal, lastUpdated, now);
+        }
+    }
+}
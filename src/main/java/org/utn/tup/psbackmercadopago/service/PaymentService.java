@@ -1,40 +1,71 @@
 package org.utn.tup.psbackmercadopago.service;
 
-import com.mercadopago.client.payment.PaymentClient;
+import com.mercadopago.net.MPResultsResourcesPage;
+import com.mercadopago.net.MPSearchRequest;
 import com.mercadopago.resources.payment.Payment;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.utn.tup.psbackmercadopago.Exceptions.PaymentProcessingException;
+import org.utn.tup.psbackmercadopago.Exceptions.PaymentNotFoundException;
+import org.utn.tup.psbackmercadopago.Exceptions.PaymentValidationException;
 import org.utn.tup.psbackmercadopago.dto.PaymentStatusDto;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class PaymentService {
 
-    private final PaymentClient paymentClient = new PaymentClient();
+    private static final Comparator<PaymentStatusDto> BY_DATE_CREATED = Comparator.comparing(
+            PaymentStatusDto::getDateCreated, Comparator.nullsFirst(Comparator.naturalOrder()));
 
-    public PaymentStatusDto getPaymentStatus(String paymentId) {
-        try {
-            log.info("Getting payment status for payment ID: {}", paymentId);
-
-            Payment payment = paymentClient.get(Long.valueOf(paymentId));
-
-            return buildPaymentStatusDto(payment);
+    private final PaymentReferenceIndex referenceIndex;
+    private final HedgedReadExecutor hedgedReads;
+    private final TenantRegistry tenantRegistry;
+    private final SharedPaymentState sharedState;
+    private final TerminalStatusResponseCache responseCache;
 
-        } catch (Exception e) {
-            log.error("Error getting payment status for ID: {}", paymentId, e);
-            throw new PaymentProcessingException("Error al obtener el estado del pago", e);
+    /**
+     * Estado de un pago para consultas: se sirve del estado compartido entre réplicas si está,
+     * y si no se consulta a MercadoPago. Devuelve también la respuesta serializada si el estado es
+     * terminal, así la caché de respuestas se actualiza una sola vez por consulta.
+     */
+    public StatusResponse getPaymentStatus(String paymentId) {
+        parsePaymentId(paymentId);
+        Optional<PaymentStatusDto> shared = sharedState.findStatus(paymentId);
+        if (shared.isPresent()) {
+            log.debug("Shared state hit for payment ID: {}", paymentId);
+            return new StatusResponse(shared.get(), responseCache.update(shared.get()));
         }
+        return refresh(paymentId);
+    }
+
+    /**
+     * Consulta siempre a MercadoPago y actualiza el estado compartido. Se usa cuando se sabe que el
+     * estado cambió (webhooks).
+     */
+    public PaymentStatusDto refreshPaymentStatus(String paymentId) {
+        return refresh(paymentId).status();
     }
 
     public PaymentStatusDto processPaymentCallback(Map<String, String> params) {
+        return processPaymentCallback(params, false);
+    }
+
+    /**
+     * @param requireDetails si es {@code true} y no se puede consultar el pago a MercadoPago se lanza la
+     *                       excepción en lugar de responder con los parámetros del callback. Lo usa el
+     *                       reproceso de notificaciones, que así vuelve a guardar el callback y no lo pierde.
+     */
+    public PaymentStatusDto processPaymentCallback(Map<String, String> params, boolean requireDetails) {
         try {
             String paymentId = params.get("payment_id");
             String status = params.get("status");
@@ -54,12 +85,23 @@ public class PaymentService {
             // Si tenemos el ID del pago, obtenemos información detallada
             if (paymentId != null && !paymentId.isEmpty()) {
                 try {
-                    Payment payment = paymentClient.get(Long.valueOf(paymentId));
-                    return buildPaymentStatusDto(payment);
+                    long id = Long.parseLong(paymentId);
+                    Payment payment = fetchPayment(id);
+                    indexPayment(payment, preferenceId);
+                    PaymentStatusDto paymentStatus = buildPaymentStatusDto(payment);
+                    sharedState.saveStatus(paymentStatus);
+                    responseCache.update(paymentStatus);
+                    return paymentStatus;
                 } catch (Exception e) {
-                    log.warn("Could not get detailed payment info for ID: {}, using basic info", paymentId, e);
+                    if (requireDetails) {
+                        throw e;
+                    }
+                    log.warn("Could not get detailed payment info for ID: {}, using basic info: {}", paymentId, e.toString());
                 }
             }
+            // Los parámetros del callback no están autenticados: solo se indexan pagos confirmados
+            // por MercadoPago, de otro modo cualquiera podría fijar el pago de una referencia ajena
+            referenceIndex.recordPreference(externalReference, preferenceId);
 
             // Agregar parámetros adicionales
             Map<String, Object> additionalInfo = new HashMap<>(params);
@@ -68,8 +110,137 @@ public class PaymentService {
             return builder.build();
 
         } catch (Exception e) {
-            log.error("Error processing payment callback", e);
-            throw new PaymentProcessingException("Error al procesar callback de pago", e);
+            throw MercadoPagoErrors.translate("Error al procesar callback de pago", e);
+        }
+    }
+
+    /**
+     * Busca el estado del último pago asociado a una referencia externa. Se resuelve con el
+     * índice local y, si la referencia no tiene pagos conocidos, con una única búsqueda en MercadoPago.
+     * Una búsqueda sin resultados se recuerda unos segundos para no repetirla en cada polling.
+     */
+    public Optional<PaymentStatusDto> getPaymentStatusByReference(String externalReference) {
+        long[] indexedPaymentIds = referenceIndex.paymentIds(externalReference);
+        if (indexedPaymentIds.length > 0) {
+            log.debug("Reference index hit for external reference: {}", externalReference);
+            Optional<PaymentStatusDto> indexed = findIndexedStatus(externalReference, indexedPaymentIds);
+            if (indexed.isPresent()) {
+                return indexed;
+            }
+        }
+        if (referenceIndex.isRecentMiss(externalReference)) {
+            log.debug("Recent reference miss, skipping MercadoPago search for: {}", externalReference);
+            return Optional.empty();
+        }
+
+        try {
+            log.info("Reference index miss, searching MercadoPago for external reference: {}", externalReference);
+
+            MPSearchRequest searchRequest = MPSearchRequest.builder()
+                    .limit(10)
+                    .offset(0)
+                    .filters(Map.of(
+                            "external_reference", externalReference,
+                            "sort", "date_created",
+                            "criteria", "desc"))
+                    .build();
+
+            MercadoPagoTenant tenant = tenantRegistry.current();
+            MPResultsResourcesPage<Payment> page = tenant.call(() ->
+                    tenant.getPaymentClient().search(searchRequest, tenant.getRequestOptions()));
+            List<Payment> results = page != null ? page.getResults() : null;
+            if (results == null || results.isEmpty()) {
+                referenceIndex.recordMiss(externalReference);
+                return Optional.empty();
+            }
+
+            String preferenceId = referenceIndex.preferenceId(externalReference);
+            results.stream()
+                    .sorted(Comparator.comparing(Payment::getDateCreated,
+                            Comparator.nullsFirst(Comparator.naturalOrder())))
+                    .forEach(payment -> indexPayment(payment, preferenceId));
+
+            sharedState.saveStatuses(results.stream().map(this::buildPaymentStatusDto).toList());
+
+            return results.stream()
+                    .max(Comparator.comparing(Payment::getDateCreated,
+                            Comparator.nullsFirst(Comparator.naturalOrder())))
+                    .map(this::buildPaymentStatusDto);
+
+        } catch (Exception e) {
+            throw MercadoPagoErrors.translate("Error al buscar pagos por referencia externa " + externalReference, e);
+        }
+    }
+
+    /**
+     * Lee en un solo lote el estado compartido de todos los pagos indexados de la referencia y devuelve
+     * el creado último, como la búsqueda: los webhooks pueden llegar desordenados. Solo se consulta a
+     * MercadoPago el último indexado, si no está en el estado compartido.
+     */
+    private Optional<PaymentStatusDto> findIndexedStatus(String externalReference, long[] paymentIds) {
+        List<String> ids = Arrays.stream(paymentIds).mapToObj(String::valueOf).toList();
+        Map<String, PaymentStatusDto> statuses = new HashMap<>(sharedState.findStatuses(ids));
+
+        String lastIndexed = ids.get(ids.size() - 1);
+        if (!statuses.containsKey(lastIndexed)) {
+            try {
+                statuses.put(lastIndexed, refreshPaymentStatus(lastIndexed));
+            } catch (PaymentNotFoundException e) {
+                // El id indexado no existe en esta cuenta: se descarta y, si no queda otro, se busca por referencia
+                log.warn("Indexed payment {} for external reference {} not found, discarding it",
+                        lastIndexed, externalReference);
+                referenceIndex.removePayment(externalReference, paymentIds[paymentIds.length - 1]);
+            }
+        }
+
+        // Recorrido de atrás para adelante: ante la misma fecha gana el indexado último
+        PaymentStatusDto latest = null;
+        for (int i = ids.size() - 1; i >= 0; i--) {
+            PaymentStatusDto status = statuses.get(ids.get(i));
+            if (status != null && (latest == null || BY_DATE_CREATED.compare(status, latest) > 0)) {
+                latest = status;
+            }
+        }
+        return Optional.ofNullable(latest);
+    }
+
+    private StatusResponse refresh(String paymentId) {
+        long id = parsePaymentId(paymentId);
+        try {
+            log.info("Getting payment status for payment ID: {}", paymentId);
+
+            Payment payment = fetchPayment(id);
+            indexPayment(payment, null);
+
+            PaymentStatusDto status = buildPaymentStatusDto(payment);
+            sharedState.saveStatus(status);
+            return new StatusResponse(status, responseCache.update(status));
+
+        } catch (Exception e) {
+            // El handler global loguea el error (con límite por tipo)
+            throw MercadoPagoErrors.translate("Error al obtener el estado del pago " + paymentId, e);
+        }
+    }
+
+    private Payment fetchPayment(long id) throws Exception {
+        // La cuenta se resuelve en el hilo del pedido: el hedge corre en otro hilo
+        MercadoPagoTenant tenant = tenantRegistry.current();
+        return hedgedReads.call(tenant.getId(), () -> tenant.call(() ->
+                tenant.getPaymentClient().get(id, tenant.getRequestOptions())));
+    }
+
+    private static long parsePaymentId(String paymentId) {
+        try {
+            return Long.parseLong(paymentId);
+        } catch (NumberFormatException e) {
+            throw new PaymentValidationException("ID de pago inválido: " + paymentId);
+        }
+    }
+
+    private void indexPayment(Payment payment, String preferenceId) {
+        if (payment != null && payment.getId() != null) {
+            referenceIndex.recordPayment(payment.getExternalReference(), preferenceId,
+                    payment.getId(), payment.getStatus());
         }
     }
 
@@ -118,4 +289,10 @@ public class PaymentService {
 
         return builder.build();
     }
+
+    /**
+     * Estado de un pago y, si es terminal, su respuesta ya serializada por {@link TerminalStatusResponseCache}.
+     */
+    public record StatusResponse(PaymentStatusDto status, Optional<TerminalStatusResponseCache.CachedResponse> cached) {
+    }
 }
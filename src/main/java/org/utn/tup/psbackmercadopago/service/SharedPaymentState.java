@@ -0,0 +1,292 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.utn.tup.psbackmercadopago.dto.DonationResponseDto;
+import org.utn.tup.psbackmercadopago.dto.PaymentStatusDto;
+import org.utn.tup.psbackmercadopago.state.SharedStateStore;
+
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Estado de pagos compartido entre réplicas sobre un {@link SharedStateStore}.
+ * <p>
+ * Si el almacenamiento falla se degrada a no compartir (se loguea y se sigue contra MercadoPago):
+ * nunca debería hacer fallar un pedido.
+ */
+@Slf4j
+@Component
+public class SharedPaymentState {
+
+    private static final String STATUS_PREFIX = "mp:status:";
+    private static final String WEBHOOK_PREFIX = "mp:webhook:";
+    private static final String DONATION_PREFIX = "mp:donation:";
+    private static final String RESPONSE_PREFIX = "mp:response:";
+
+    private final SharedStateStore store;
+    private final ObjectMapper objectMapper;
+
+    private final Duration statusTtl;
+    private final Duration terminalStatusTtl;
+    private final Duration webhookTtl;
+    private final Duration idempotencyTtl;
+    private final Duration idempotencyPendingTtl;
+
+    public SharedPaymentState(SharedStateStore store, ObjectMapper objectMapper,
+                              @Value("${app.state.status-ttl:PT10S}") Duration statusTtl,
+                              @Value("${app.state.terminal-status-ttl:PT24H}") Duration terminalStatusTtl,
+                              @Value("${app.state.webhook-ttl:PT1H}") Duration webhookTtl,
+                              @Value("${app.state.idempotency-ttl:PT24H}") Duration idempotencyTtl,
+                              @Value("${app.state.idempotency-pending-ttl:PT1M}") Duration idempotencyPendingTtl) {
+        this.store = store;
+        this.objectMapper = objectMapper;
+        this.statusTtl = statusTtl;
+        this.terminalStatusTtl = terminalStatusTtl;
+        this.webhookTtl = webhookTtl;
+        this.idempotencyTtl = idempotencyTtl;
+        this.idempotencyPendingTtl = idempotencyPendingTtl;
+    }
+
+    public Optional<PaymentStatusDto> findStatus(String paymentId) {
+        try {
+            return store.get(statusKey(paymentId)).map(json -> read(json, PaymentStatusDto.class));
+        } catch (Exception e) {
+            log.warn("Shared state read failed for payment ID: {}: {}", paymentId, e.toString());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Lee varios estados en un único lote ({@code MGET} en Redis).
+     *
+     * @return los estados encontrados por id de pago; vacío si el almacenamiento falló
+     */
+    public Map<String, PaymentStatusDto> findStatuses(Collection<String> paymentIds) {
+        Map<String, String> keys = new HashMap<>();
+        for (String paymentId : paymentIds) {
+            keys.put(statusKey(paymentId), paymentId);
+        }
+        try {
+            Map<String, PaymentStatusDto> found = new HashMap<>();
+            store.getAll(keys.keySet()).forEach((key, json) ->
+                    found.put(keys.get(key), read(json, PaymentStatusDto.class)));
+            return found;
+        } catch (Exception e) {
+            log.warn("Shared state batch read failed for {} statuses: {}", paymentIds.size(), e.toString());
+            return Map.of();
+        }
+    }
+
+    public void saveStatus(PaymentStatusDto status) {
+        try {
+            store.put(statusKey(status.getPaymentId()), write(status), ttlFor(status));
+        } catch (Exception e) {
+            log.warn("Shared state write failed for payment ID: {}: {}", status.getPaymentId(), e.toString());
+        }
+    }
+
+    /**
+     * Guarda varios estados en un único lote. Los terminales y los no terminales usan TTL distintos,
+     * así que se envían como a lo sumo dos lotes.
+     */
+    public void saveStatuses(Collection<PaymentStatusDto> statuses) {
+        Map<String, String> terminal = new HashMap<>();
+        Map<String, String> nonTerminal = new HashMap<>();
+        try {
+            for (PaymentStatusDto status : statuses) {
+                (PaymentReferenceIndex.isTerminal(status.getStatus()) ? terminal : nonTerminal)
+                        .put(statusKey(status.getPaymentId()), write(status));
+            }
+            store.putAll(terminal, terminalStatusTtl);
+            store.putAll(nonTerminal, statusTtl);
+        } catch (Exception e) {
+            log.warn("Shared state batch write failed for {} statuses: {}", statuses.size(), e.toString());
+        }
+    }
+
+    /**
+     * Publica el ETag de la respuesta terminal que una réplica guardó en su
+     * {@link TerminalStatusResponseCache}, para que las demás detecten que su copia quedó vieja
+     * (por ejemplo, tras una devolución).
+     */
+    public void saveResponseVersion(String paymentId, String etag) {
+        try {
+            store.put(responseKey(paymentId), etag, terminalStatusTtl);
+        } catch (Exception e) {
+            log.warn("Shared state write failed for response version of payment ID: {}: {}",
+                    paymentId, e.toString());
+        }
+    }
+
+    public void clearResponseVersion(String paymentId) {
+        try {
+            store.delete(responseKey(paymentId));
+        } catch (Exception e) {
+            log.warn("Shared state delete failed for response version of payment ID: {}: {}",
+                    paymentId, e.toString());
+        }
+    }
+
+    /**
+     * @return false si otra réplica publicó otra versión o la versión ya no existe; true si coincide o
+     * si el almacenamiento falló (la copia local sigue acotada por su TTL)
+     */
+    public boolean isResponseCurrent(String paymentId, String etag) {
+        try {
+            return store.get(responseKey(paymentId)).map(etag::equals).orElse(false);
+        } catch (Exception e) {
+            log.warn("Shared state read failed for response version of payment ID: {}: {}",
+                    paymentId, e.toString());
+            return true;
+        }
+    }
+
+    /**
+     * @return true si es la primera vez que se ve la notificación en cualquier réplica
+     */
+    public boolean markWebhookReceived(String notificationKey) {
+        try {
+            return store.putIfAbsent(WEBHOOK_PREFIX + tenant() + ":" + notificationKey, "1", webhookTtl);
+        } catch (Exception e) {
+            log.warn("Shared state dedup failed for webhook {}: {}", notificationKey, e.toString());
+            return true;
+        }
+    }
+
+    /**
+     * Libera la marca de una notificación que no se pudo procesar, para que el reintento de
+     * MercadoPago no se descarte como duplicado.
+     */
+    public void clearWebhookMark(String notificationKey) {
+        try {
+            store.delete(WEBHOOK_PREFIX + tenant() + ":" + notificationKey);
+        } catch (Exception e) {
+            log.warn("Shared state delete failed for webhook {}: {}", notificationKey, e.toString());
+        }
+    }
+
+    /**
+     * Reserva la clave de idempotencia para esta réplica con una marca "en curso" atada al hash del
+     * cuerpo. La reserva es atómica ({@code putIfAbsent}), así que dos réplicas no crean la misma donación.
+     *
+     * @return vacío si la clave quedó reservada (o si el almacenamiento falló y se sigue sin
+     * idempotencia); si no, el registro existente, en curso o completo
+     */
+    public Optional<IdempotencyRecord> claimDonation(String idempotencyKey, String requestHash) {
+        String key = DONATION_PREFIX + tenant() + ":" + idempotencyKey;
+        try {
+            String pending = write(new IdempotencyRecord(requestHash, null));
+            // Si la otra réplica libera la clave entre las dos operaciones se vuelve a intentar una vez
+            for (int attempt = 0; attempt < 2; attempt++) {
+                if (store.putIfAbsent(key, pending, idempotencyPendingTtl)) {
+                    return Optional.empty();
+                }
+                Optional<IdempotencyRecord> existing = store.get(key).map(json -> read(json, IdempotencyRecord.class));
+                if (existing.isPresent()) {
+                    return existing;
+                }
+            }
+            return Optional.of(new IdempotencyRecord(requestHash, null));
+        } catch (Exception e) {
+            log.warn("Shared state claim failed for idempotency key {}: {}", idempotencyKey, e.toString());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Reemplaza la marca "en curso" por la donación creada.
+     */
+    public void completeDonation(String idempotencyKey, String requestHash, DonationResponseDto donation) {
+        try {
+            store.put(DONATION_PREFIX + tenant() + ":" + idempotencyKey,
+                    write(new IdempotencyRecord(requestHash, donation)), idempotencyTtl);
+        } catch (Exception e) {
+            log.warn("Shared state write failed for idempotency key {}: {}", idempotencyKey, e.toString());
+        }
+    }
+
+    /**
+     * Libera la clave de una donación que no se pudo crear, para que el reintento no quede bloqueado.
+     */
+    public void releaseDonation(String idempotencyKey) {
+        try {
+            store.delete(DONATION_PREFIX + tenant() + ":" + idempotencyKey);
+        } catch (Exception e) {
+            log.warn("Shared state delete failed for idempotency key {}: {}", idempotencyKey, e.toString());
+        }
+    }
+
+    /**
+     * @return SHA-256 en hexadecimal del cuerpo serializado, para detectar una clave reutilizada con otro pedido
+     */
+    public String requestHash(Object request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not hash " + request.getClass().getSimpleName(), e);
+        }
+    }
+
+    /**
+     * @return true si la clave se puede perder antes de su TTL sin efectos: los estados de pago se
+     * vuelven a consultar a MercadoPago y perder una versión de respuesta solo invalida la copia
+     * local; las marcas de webhook y de idempotencia no se recuperan
+     */
+    public static boolean isRebuildable(String key) {
+        return key.startsWith(STATUS_PREFIX) || key.startsWith(RESPONSE_PREFIX);
+    }
+
+    private Duration ttlFor(PaymentStatusDto status) {
+        return PaymentReferenceIndex.isTerminal(status.getStatus()) ? terminalStatusTtl : statusTtl;
+    }
+
+    private static String statusKey(String paymentId) {
+        return STATUS_PREFIX + tenant() + ":" + paymentId;
+    }
+
+    private static String responseKey(String paymentId) {
+        return RESPONSE_PREFIX + tenant() + ":" + paymentId;
+    }
+
+    private static String tenant() {
+        String tenant = TenantContext.get();
+        return tenant != null ? tenant : TenantRegistry.DEFAULT_TENANT;
+    }
+
+    private String write(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Registro de idempotencia de una donación; sin {@code donation} mientras se está creando.
+     */
+    public record IdempotencyRecord(String requestHash, DonationResponseDto donation) {
+
+        @JsonIgnore
+        public boolean isPending() {
+            return donation == null;
+        }
+    }
+
+    private <T> T read(String json, Class<T> type) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not deserialize " + type.getSimpleName(), e);
+        }
+    }
+}
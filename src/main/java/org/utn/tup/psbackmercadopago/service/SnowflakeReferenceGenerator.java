@@ -0,0 +1,203 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador de referencias estilo Snowflake: 41 bits de milisegundos desde {@link #EPOCH},
+ * 10 bits de id de nodo y 12 bits de secuencia.
+ * <p>
+ * El estado (timestamp + secuencia) vive en un único {@link AtomicLong} que solo avanza, así que
+ * los ids son monotónicos aunque el reloj del sistema retroceda. Si se agota la secuencia dentro
+ * de un milisegundo se toma prestado el siguiente en lugar de esperar. El reloj se deriva de
+ * {@link System#nanoTime()} (vDSO), por lo que no hay syscalls ni {@code SecureRandom} por pedido.
+ * El id se codifica en Base32 Crockford de ancho fijo, de modo que el orden lexicográfico
+ * coincide con el orden de generación.
+ * <p>
+ * La unicidad entre réplicas depende de que cada una tenga un id de nodo distinto: con más de una
+ * réplica hay que fijar {@code app.reference.node-id} (o {@code app.reference.require-node-id=true}
+ * para que arrancar sin él falle). Si no se fija se deriva de los 10 bits bajos de la IPv4 del
+ * contenedor, que no se repiten dentro de una red /22, y en último caso de un hash del hostname,
+ * que sí puede repetirse.
+ * <p>
+ * La monotonía solo se garantiza dentro de un proceso: si tras un reinicio el reloj del sistema
+ * quedó atrás más tiempo del que duró el reinicio, el mismo nodo puede volver a emitir referencias
+ * ya usadas. Se asume un reloj sincronizado por NTP y reinicios más largos que sus correcciones.
+ */
+@Slf4j
+@Component
+public class SnowflakeReferenceGenerator implements ExternalReferenceGenerator {
+
+    static final long EPOCH = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int ENCODED_LENGTH = 13;
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private final char[] prefix;
+    private final long nodeId;
+
+    private final long baseMillis;
+    private final long baseNanos;
+
+    /** (millis desde EPOCH << SEQUENCE_BITS) | secuencia del último id emitido. */
+    private final AtomicLong state = new AtomicLong();
+
+    @Autowired
+    public SnowflakeReferenceGenerator(@Value("${app.reference.prefix:DONATION-}") String prefix,
+                                       @Value("${app.reference.node-id:-1}") long nodeId,
+                                       @Value("${app.reference.require-node-id:false}") boolean requireNodeId) {
+        this(prefix, nodeId, requireNodeId, Instant.now());
+    }
+
+    SnowflakeReferenceGenerator(String prefix, long nodeId) {
+        this(prefix, nodeId, false);
+    }
+
+    /** Permite fijar el instante de arranque para probar referencias de fechas futuras. */
+    SnowflakeReferenceGenerator(String prefix, long nodeId, Instant start) {
+        this(prefix, nodeId, false, start);
+    }
+
+    private SnowflakeReferenceGenerator(String prefix, long nodeId, boolean requireNodeId, Instant start) {
+        if (nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("app.reference.node-id must be between 0 and " + MAX_NODE_ID);
+        }
+        if (nodeId < 0 && requireNodeId) {
+            throw new IllegalStateException(
+                    "app.reference.node-id is required (app.reference.require-node-id=true)");
+        }
+        this.prefix = prefix.toCharArray();
+        this.nodeId = nodeId >= 0 ? nodeId : deriveNodeId();
+        this.baseMillis = start.toEpochMilli() - EPOCH;
+        this.baseNanos = System.nanoTime();
+        log.info("External reference generator initialized with node ID: {}", this.nodeId);
+    }
+
+    @Override
+    public String next() {
+        long now = currentMillis();
+        long last;
+        long next;
+        do {
+            last = state.get();
+            // Si el reloj no avanzó, last + 1 incrementa la secuencia y, al desbordar, pasa al próximo ms
+            next = (last >>> SEQUENCE_BITS) < now ? now << SEQUENCE_BITS : last + 1;
+        } while (!state.compareAndSet(last, next));
+
+        long id = ((next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS))
+                | (nodeId << SEQUENCE_BITS)
+                | (next & SEQUENCE_MASK);
+        return encode(id);
+    }
+
+    /**
+     * Inversa de la codificación: solo acepta referencias con el prefijo configurado y 13 caracteres
+     * Base32 Crockford en mayúsculas, de modo que {@code decode} es exacta y sin ambigüedades.
+     */
+    @Override
+    public OptionalLong decode(String reference) {
+        if (reference == null || reference.length() != prefix.length + ENCODED_LENGTH) {
+            return OptionalLong.empty();
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (reference.charAt(i) != prefix[i]) {
+                return OptionalLong.empty();
+            }
+        }
+        // 13 caracteres son 65 bits: el primero aporta los bits 60-64 y, para que el id entre en un long
+        // positivo de 63 bits, solo puede valer 0-7 (los ids pasan de '0' a '1' hacia septiembre de 2032)
+        char first = reference.charAt(prefix.length);
+        if (first < '0' || first > '7') {
+            return OptionalLong.empty();
+        }
+        long id = 0;
+        for (int i = prefix.length; i < reference.length(); i++) {
+            char c = reference.charAt(i);
+            int value = c < DECODE.length ? DECODE[c] : -1;
+            if (value < 0) {
+                return OptionalLong.empty();
+            }
+            id = (id << 5) | value;
+        }
+        return OptionalLong.of(id);
+    }
+
+    long nodeId() {
+        return nodeId;
+    }
+
+    private long currentMillis() {
+        return baseMillis + (System.nanoTime() - baseNanos) / 1_000_000L;
+    }
+
+    private String encode(long id) {
+        char[] chars = new char[prefix.length + ENCODED_LENGTH];
+        System.arraycopy(prefix, 0, chars, 0, prefix.length);
+        for (int i = chars.length - 1; i >= prefix.length; i--) {
+            chars[i] = ALPHABET[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    private static long deriveNodeId() {
+        try {
+            for (NetworkInterface nic : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (nic.isLoopback() || !nic.isUp()) {
+                    continue;
+                }
+                for (InetAddress address : Collections.list(nic.getInetAddresses())) {
+                    if (address instanceof Inet4Address && address.isSiteLocalAddress()) {
+                        byte[] ip = address.getAddress();
+                        long nodeId = ((ip[2] & 0x03L) << 8) | (ip[3] & 0xFFL);
+                        log.warn("app.reference.node-id is not set, derived node ID {} from {}. Replicas outside "
+                                + "the same /22 network may collide: set app.reference.node-id explicitly",
+                                nodeId, address.getHostAddress());
+                        return nodeId;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Could not inspect network interfaces: {}", e.toString());
+        }
+
+        String host = System.getenv("HOSTNAME");
+        if (host == null || host.isBlank()) {
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (Exception e) {
+                log.error("app.reference.node-id is not set and the host name could not be resolved, using node ID 0. "
+                        + "Replicas sharing a node ID generate duplicate external references", e);
+                return 0;
+            }
+        }
+        long nodeId = (host.hashCode() & 0x7fffffffL) % (MAX_NODE_ID + 1);
+        log.error("app.reference.node-id is not set, derived node ID {} from host name hash. Two replicas can "
+                + "get the same node ID and generate duplicate external references: set app.reference.node-id", nodeId);
+        return nodeId;
+    }
+}
@@ -0,0 +1,29 @@
+package org.utn.tup.psbackmercadopago.service;
+
+/**
+ * Cuenta de MercadoPago del pedido en curso. La completa {@code TenantInterceptor}; el trabajo que
+ * pasa a otros hilos debe capturar el {@link MercadoPagoTenant} antes de salir del hilo del pedido.
+ */
+public final class TenantContext {
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private TenantContext() {
+    }
+
+    public static String get() {
+        return CURRENT.get();
+    }
+
+    public static void set(String tenantId) {
+        if (tenantId == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(tenantId);
+        }
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+}
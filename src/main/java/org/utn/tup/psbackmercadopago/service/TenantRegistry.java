@@ -0,0 +1,83 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.utn.tup.psbackmercadopago.Config.TenantProperties;
+import org.utn.tup.psbackmercadopago.Exceptions.PaymentValidationException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cuentas de MercadoPago configuradas. Si un pedido no indica cuenta se usa {@value #DEFAULT_TENANT}.
+ */
+@Slf4j
+@Component
+public class TenantRegistry {
+
+    public static final String DEFAULT_TENANT = "default";
+
+    private final Map<String, MercadoPagoTenant> tenants = new LinkedHashMap<>();
+
+    public TenantRegistry(TenantProperties properties,
+                          @Value("${mercadopago.access.token}") String defaultAccessToken,
+                          WebhookSignatureVerifier defaultWebhookVerifier,
+                          MeterRegistry meterRegistry) {
+
+        Map<String, TenantProperties.Tenant> configured = new LinkedHashMap<>(properties.getTenants());
+        configured.computeIfAbsent(DEFAULT_TENANT, id -> {
+            TenantProperties.Tenant tenant = new TenantProperties.Tenant();
+            tenant.setAccessToken(defaultAccessToken);
+            return tenant;
+        });
+
+        configured.forEach((id, config) -> {
+            if (config.getAccessToken() == null || config.getAccessToken().isBlank()) {
+                throw new IllegalStateException("Missing access token for MercadoPago tenant " + id);
+            }
+            WebhookSignatureVerifier verifier = config.getWebhookSecret() != null
+                    ? defaultWebhookVerifier.withSecret(config.getWebhookSecret())
+                    : defaultWebhookVerifier;
+            tenants.put(id, new MercadoPagoTenant(id, config, verifier, meterRegistry));
+        });
+
+        log.info("MercadoPago tenants initialized: {}", tenants.keySet());
+    }
+
+    /**
+     * @param tenantId id de la cuenta, o null para la cuenta por defecto
+     * @throws PaymentValidationException si la cuenta no existe
+     */
+    public MercadoPagoTenant resolve(String tenantId) {
+        if (tenantId == null || tenantId.isBlank()) {
+            return tenants.get(DEFAULT_TENANT);
+        }
+        MercadoPagoTenant tenant = tenants.get(tenantId);
+        if (tenant == null) {
+            throw new PaymentValidationException("Cuenta de MercadoPago desconocida: " + tenantId);
+        }
+        return tenant;
+    }
+
+    /**
+     * @return true si además de la cuenta por defecto hay otras configuradas
+     */
+    public boolean hasMultipleTenants() {
+        return tenants.size() > 1;
+    }
+
+    /**
+     * @return la cuenta del pedido en curso según {@link TenantContext}
+     */
+    public MercadoPagoTenant current() {
+        return resolve(TenantContext.get());
+    }
+
+    @PreDestroy
+    public void close() {
+        tenants.values().forEach(MercadoPagoTenant::close);
+    }
+}
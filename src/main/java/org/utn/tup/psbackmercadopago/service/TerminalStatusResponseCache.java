@@ -0,0 +1,219 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.utn.tup.psbackmercadopago.dto.PaymentStatusDto;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * Respuestas ya serializadas de {@code GET /status/{paymentId}} para pagos en estado terminal.
+ * <p>
+ * Un pago aprobado o rechazado casi no vuelve a cambiar, así que se guarda el JSON en UTF-8 junto
+ * con un ETag derivado del contenido y las lecturas siguientes escriben esos bytes directamente.
+ * La memoria se limita por tamaño en bytes ({@code app.status-cache.max-bytes}), desalojando las
+ * menos usadas, y cada entrada vive como máximo {@code app.state.terminal-status-ttl}.
+ * <p>
+ * La excepción son las devoluciones y contracargos, que llegan por webhook a una sola réplica. Cada
+ * réplica publica en {@link SharedPaymentState} el ETag de lo que guarda y antes de responder desde
+ * la caché verifica que siga siendo el publicado: si otra réplica guardó otro estado, la entrada se
+ * descarta. Con Redis el near-cache acota esa demora a {@code app.state.near-cache-ttl}.
+ */
+@Slf4j
+@Component
+public class TerminalStatusResponseCache {
+
+    // Estimación del costo fijo de cada entrada: nodo del mapa, record, arrays y strings
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    public record CachedResponse(byte[] body, String etag) {
+
+        /**
+         * @param ifNoneMatch valor del header {@code If-None-Match}, puede ser una lista o {@code *}
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final SharedPaymentState sharedState;
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+
+    // LinkedHashMap en orden de acceso: el primero es el menos usado
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long currentBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter stale;
+
+    @Autowired
+    public TerminalStatusResponseCache(ObjectMapper objectMapper, SharedPaymentState sharedState,
+                                       @Value("${app.status-cache.max-bytes:8388608}") long maxBytes,
+                                       @Value("${app.state.terminal-status-ttl:PT24H}") Duration ttl,
+                                       MeterRegistry meterRegistry) {
+        this(objectMapper, sharedState, maxBytes, ttl, meterRegistry, System::currentTimeMillis);
+    }
+
+    TerminalStatusResponseCache(ObjectMapper objectMapper, SharedPaymentState sharedState, long maxBytes,
+                                Duration ttl, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.objectMapper = objectMapper;
+        this.sharedState = sharedState;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+
+        this.hits = Counter.builder("mp.status.cache.requests").tag("result", "hit")
+                .description("Consultas de estado servidas desde respuestas serializadas")
+                .register(meterRegistry);
+        this.misses = Counter.builder("mp.status.cache.requests").tag("result", "miss")
+                .description("Consultas de estado servidas desde respuestas serializadas")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("mp.status.cache.evictions")
+                .description("Respuestas desalojadas por superar el límite de bytes")
+                .register(meterRegistry);
+        this.stale = Counter.builder("mp.status.cache.stale")
+                .description("Respuestas descartadas por vencidas o porque otra réplica guardó otro estado")
+                .register(meterRegistry);
+        Gauge.builder("mp.status.cache.bytes", this, TerminalStatusResponseCache::currentBytes)
+                .description("Bytes estimados ocupados por las respuestas en caché")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public Optional<CachedResponse> get(String paymentId) {
+        String key = key(paymentId);
+        Entry cached;
+        synchronized (entries) {
+            cached = entries.get(key);
+        }
+        if (cached != null && (clock.getAsLong() >= cached.expiresAt
+                || !sharedState.isResponseCurrent(paymentId, cached.response.etag()))) {
+            synchronized (entries) {
+                // Solo si nadie la reemplazó mientras tanto
+                if (entries.get(key) == cached) {
+                    remove(key);
+                }
+            }
+            stale.increment();
+            cached = null;
+        }
+        (cached != null ? hits : misses).increment();
+        return cached != null ? Optional.of(cached.response) : Optional.empty();
+    }
+
+    /**
+     * Actualiza la caché con un estado recién obtenido: si es terminal guarda su respuesta
+     * serializada y la devuelve; si no, descarta la que hubiera.
+     */
+    public Optional<CachedResponse> update(PaymentStatusDto status) {
+        String key = key(status.getPaymentId());
+        if (!PaymentReferenceIndex.isTerminal(status.getStatus())) {
+            synchronized (entries) {
+                remove(key);
+            }
+            // Un pago aprobado puede pasar a in_mediation: las copias de otras réplicas dejan de valer
+            sharedState.clearResponseVersion(status.getPaymentId());
+            return Optional.empty();
+        }
+
+        CachedResponse response;
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(status);
+            response = new CachedResponse(body, etag(body));
+        } catch (Exception e) {
+            log.warn("Could not serialize status for payment ID: {}: {}", status.getPaymentId(), e.toString());
+            return Optional.empty();
+        }
+
+        // Se publica aunque no entre en la caché local, para invalidar las copias de otras réplicas
+        sharedState.saveResponseVersion(status.getPaymentId(), response.etag());
+        long weight = weight(key, response);
+        if (weight > maxBytes) {
+            return Optional.of(response);
+        }
+        synchronized (entries) {
+            remove(key);
+            entries.put(key, new Entry(response, clock.getAsLong() + ttlMillis));
+            currentBytes += weight;
+            evictIfNeeded();
+        }
+        return Optional.of(response);
+    }
+
+    public long currentBytes() {
+        synchronized (entries) {
+            return currentBytes;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void remove(String key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            currentBytes -= weight(key, previous.response);
+        }
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            currentBytes -= weight(eldest.getKey(), eldest.getValue().response);
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private static long weight(String key, CachedResponse response) {
+        return response.body().length + 2L * (key.length() + response.etag().length()) + ENTRY_OVERHEAD_BYTES;
+    }
+
+    private static String key(String paymentId) {
+        String tenant = TenantContext.get();
+        return (tenant != null ? tenant : TenantRegistry.DEFAULT_TENANT) + ":" + paymentId;
+    }
+
+    private record Entry(CachedResponse response, long expiresAt) {
+    }
+
+    private static String etag(byte[] body) throws NoSuchAlgorithmException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+        return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+    }
+}
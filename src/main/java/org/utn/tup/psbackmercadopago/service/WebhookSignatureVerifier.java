@@ -0,0 +1,311 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Verifica las cabeceras {@code x-signature} / {@code x-request-id} de las notificaciones de MercadoPago.
+ * <p>
+ * El manifiesto firmado es {@code id:<data.id>;request-id:<x-request-id>;ts:<ts>;} con HMAC-SHA256.
+ * Cada hilo reutiliza su propio {@link Mac} y buffers, y las cabeceras se recorren por índice, así que
+ * una notificación falsa se rechaza sin regex, sin substrings ni objetos temporales.
+ * Para que una firma capturada no pueda reenviarse indefinidamente, el {@code ts} debe estar a menos
+ * de {@code mercadopago.webhook.max-age} del reloj local (se aceptan segundos o milisegundos).
+ * Si no hay secreto configurado la verificación queda deshabilitada.
+ */
+@Slf4j
+@Component
+public class WebhookSignatureVerifier {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int DIGEST_LENGTH = 32;
+    private static final int MAX_MANIFEST_LENGTH = 512;
+
+    private static final byte[] ID_PART = "id:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] REQUEST_ID_PART = "request-id:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TS_PART = "ts:".getBytes(StandardCharsets.US_ASCII);
+
+    public enum Result {
+        VALID, DISABLED, MISSING_HEADER, MALFORMED, STALE, MISMATCH;
+
+        public boolean accepted() {
+            return this == VALID || this == DISABLED;
+        }
+    }
+
+    // Por debajo de este valor el ts está en segundos (hasta el año 5138)
+    private static final long MAX_SECONDS_TIMESTAMP = 100_000_000_000L;
+
+    private final boolean enabled;
+    private final ThreadLocal<Scratch> scratch;
+    private final Map<Result, Counter> rejected = new EnumMap<>(Result.class);
+    private final long maxAgeMillis;
+    private final LongSupplier clock;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public WebhookSignatureVerifier(@Value("${mercadopago.webhook.secret:}") String secret,
+                                    @Value("${mercadopago.webhook.max-age:PT10M}") Duration maxAge,
+                                    MeterRegistry meterRegistry) {
+        this(secret, maxAge, meterRegistry, System::currentTimeMillis);
+    }
+
+    WebhookSignatureVerifier(String secret, Duration maxAge, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.enabled = secret != null && !secret.isBlank();
+        this.maxAgeMillis = maxAge.toMillis();
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        SecretKeySpec key = enabled ? new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM) : null;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(key));
+
+        for (Result result : Result.values()) {
+            if (!result.accepted()) {
+                rejected.put(result, Counter.builder("mp.webhook.rejected")
+                        .description("Notificaciones de MercadoPago rechazadas por firma")
+                        .tag("reason", result.name().toLowerCase())
+                        .register(meterRegistry));
+            }
+        }
+
+        if (!enabled) {
+            log.warn("mercadopago.webhook.secret not configured, webhook signature verification is disabled");
+        }
+    }
+
+    /**
+     * @return un verificador con otro secreto y la misma ventana de validez, para otra cuenta
+     */
+    public WebhookSignatureVerifier withSecret(String secret) {
+        return new WebhookSignatureVerifier(secret, Duration.ofMillis(maxAgeMillis), meterRegistry, clock);
+    }
+
+    /**
+     * @param signature valor de la cabecera {@code x-signature} ({@code ts=...,v1=...})
+     * @param requestId valor de la cabecera {@code x-request-id}
+     * @param dataId    parámetro {@code data.id} de la notificación
+     */
+    public Result verify(CharSequence signature, CharSequence requestId, CharSequence dataId) {
+        Result result = doVerify(signature, requestId, dataId);
+        if (!result.accepted()) {
+            rejected.get(result).increment();
+        }
+        return result;
+    }
+
+    private Result doVerify(CharSequence signature, CharSequence requestId, CharSequence dataId) {
+        if (!enabled) {
+            return Result.DISABLED;
+        }
+        if (signature == null || signature.length() == 0) {
+            return Result.MISSING_HEADER;
+        }
+
+        // Parseo de "ts=<ts>,v1=<hash>" por índices
+        int tsStart = -1, tsEnd = -1, v1Start = -1, v1End = -1;
+        int length = signature.length();
+        int partStart = 0;
+        while (partStart < length) {
+            int partEnd = partStart;
+            while (partEnd < length && signature.charAt(partEnd) != ',') {
+                partEnd++;
+            }
+            int keyStart = skipSpaces(signature, partStart, partEnd);
+            int equals = keyStart;
+            while (equals < partEnd && signature.charAt(equals) != '=') {
+                equals++;
+            }
+            if (equals < partEnd) {
+                int valueStart = skipSpaces(signature, equals + 1, partEnd);
+                int valueEnd = trimSpaces(signature, valueStart, partEnd);
+                int keyEnd = trimSpaces(signature, keyStart, equals);
+                if (matches(signature, keyStart, keyEnd, "ts")) {
+                    tsStart = valueStart;
+                    tsEnd = valueEnd;
+                } else if (matches(signature, keyStart, keyEnd, "v1")) {
+                    v1Start = valueStart;
+                    v1End = valueEnd;
+                }
+            }
+            partStart = partEnd + 1;
+        }
+        if (tsStart < 0 || tsStart == tsEnd || v1End - v1Start != DIGEST_LENGTH * 2) {
+            return Result.MALFORMED;
+        }
+        long ts = parseTimestamp(signature, tsStart, tsEnd);
+        if (ts < 0) {
+            return Result.MALFORMED;
+        }
+        long tsMillis = ts < MAX_SECONDS_TIMESTAMP ? ts * 1000 : ts;
+        if (Math.abs(clock.getAsLong() - tsMillis) > maxAgeMillis) {
+            return Result.STALE;
+        }
+
+        Scratch s = scratch.get();
+        byte[] buffer = s.manifest;
+        int pos = 0;
+        if (dataId != null && dataId.length() > 0) {
+            pos = append(buffer, pos, ID_PART);
+            pos = appendLowerAscii(buffer, pos, dataId, 0, dataId.length());
+            pos = appendSeparator(buffer, pos);
+        }
+        if (requestId != null && requestId.length() > 0) {
+            pos = append(buffer, pos, REQUEST_ID_PART);
+            pos = appendAscii(buffer, pos, requestId, 0, requestId.length());
+            pos = appendSeparator(buffer, pos);
+        }
+        pos = append(buffer, pos, TS_PART);
+        pos = appendAscii(buffer, pos, signature, tsStart, tsEnd);
+        pos = appendSeparator(buffer, pos);
+        if (pos < 0) {
+            return Result.MALFORMED;
+        }
+
+        try {
+            s.mac.update(buffer, 0, pos);
+            s.mac.doFinal(s.digest, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+
+        // Comparación en tiempo constante contra el hex recibido
+        int diff = 0;
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            int high = hexValue(signature.charAt(v1Start + 2 * i));
+            int low = hexValue(signature.charAt(v1Start + 2 * i + 1));
+            diff |= ((high << 4) | low) ^ (s.digest[i] & 0xff);
+            diff |= (high | low) & 0x100;
+        }
+        return diff == 0 ? Result.VALID : Result.MISMATCH;
+    }
+
+    /** Parsea dígitos decimales sin allocar; -1 si no es un número válido. */
+    private static long parseTimestamp(CharSequence value, int from, int to) {
+        if (to - from > 18) {
+            return -1;
+        }
+        long result = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static int skipSpaces(CharSequence value, int from, int to) {
+        while (from < to && value.charAt(from) == ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimSpaces(CharSequence value, int from, int to) {
+        while (to > from && value.charAt(to - 1) == ' ') {
+            to--;
+        }
+        return to;
+    }
+
+    private static boolean matches(CharSequence value, int from, int to, String expected) {
+        if (to - from != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (value.charAt(from + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Devuelve el valor del dígito hex, o 0x100 si el caracter no es hex. */
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return 0x100;
+    }
+
+    private static int append(byte[] buffer, int pos, byte[] part) {
+        if (pos < 0 || pos + part.length > buffer.length) {
+            return -1;
+        }
+        System.arraycopy(part, 0, buffer, pos, part.length);
+        return pos + part.length;
+    }
+
+    private static int appendSeparator(byte[] buffer, int pos) {
+        if (pos < 0 || pos >= buffer.length) {
+            return -1;
+        }
+        buffer[pos] = ';';
+        return pos + 1;
+    }
+
+    private static int appendAscii(byte[] buffer, int pos, CharSequence value, int from, int to) {
+        if (pos < 0 || pos + (to - from) > buffer.length) {
+            return -1;
+        }
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c > 0x7f) {
+                return -1;
+            }
+            buffer[pos++] = (byte) c;
+        }
+        return pos;
+    }
+
+    // MercadoPago firma el data.id en minúsculas cuando es alfanumérico
+    private static int appendLowerAscii(byte[] buffer, int pos, CharSequence value, int from, int to) {
+        int end = appendAscii(buffer, pos, value, from, to);
+        for (int i = pos; i < end; i++) {
+            byte b = buffer[i];
+            if (b >= 'A' && b <= 'Z') {
+                buffer[i] = (byte) (b + ('a' - 'A'));
+            }
+        }
+        return end;
+    }
+
+    private static final class Scratch {
+        private final Mac mac;
+        private final byte[] manifest = new byte[MAX_MANIFEST_LENGTH];
+        private final byte[] digest = new byte[DIGEST_LENGTH];
+
+        private Scratch(SecretKeySpec key) {
+            if (key == null) {
+                this.mac = null;
+                return;
+            }
+            try {
+                this.mac = Mac.getInstance(ALGORITHM);
+                this.mac.init(key);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Could not initialize " + ALGORITHM, e);
+            }
+        }
+    }
+}
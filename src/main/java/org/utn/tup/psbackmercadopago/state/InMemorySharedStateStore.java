@@ -0,0 +1,130 @@
+package org.utn.tup.psbackmercadopago.state;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * Implementación local, para una sola réplica o como near-cache. Las entradas vencidas se
+ * descartan al leerlas y en barridos cuando se supera {@code maxEntries}.
+ * <p>
+ * Si tras descartar las vencidas sigue lleno, solo se desalojan las claves que {@code evictable}
+ * acepta: las que se pueden reconstruir (estados de pago, o cualquier clave en un near-cache).
+ * Las marcas de deduplicación y los registros de idempotencia no se pierden antes de su TTL; si
+ * son ellas las que ocupan la capacidad se avisa y se deja crecer.
+ */
+@Slf4j
+public class InMemorySharedStateStore implements SharedStateStore {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final int maxEntries;
+    private final Predicate<String> evictable;
+    // Tamaño a partir del cual se vuelve a barrer; sube si un barrido no logra liberar espacio
+    private volatile int sweepThreshold;
+
+    public InMemorySharedStateStore(int maxEntries, Predicate<String> evictable) {
+        this.maxEntries = maxEntries;
+        this.evictable = evictable;
+        this.sweepThreshold = maxEntries;
+    }
+
+    @Override
+    public Optional<String> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            entries.remove(key, entry);
+            return Optional.empty();
+        }
+        return Optional.of(entry.value);
+    }
+
+    @Override
+    public Map<String, String> getAll(Collection<String> keys) {
+        Map<String, String> found = new HashMap<>();
+        for (String key : keys) {
+            get(key).ifPresent(value -> found.put(key, value));
+        }
+        return found;
+    }
+
+    @Override
+    public void put(String key, String value, Duration ttl) {
+        entries.put(key, new Entry(value, expiresAt(ttl)));
+        sweepIfNeeded();
+    }
+
+    @Override
+    public void putAll(Map<String, String> values, Duration ttl) {
+        long expiresAt = expiresAt(ttl);
+        values.forEach((key, value) -> entries.put(key, new Entry(value, expiresAt)));
+        sweepIfNeeded();
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, String value, Duration ttl) {
+        Entry created = new Entry(value, expiresAt(ttl));
+        long now = System.nanoTime();
+        Entry result = entries.compute(key, (k, current) ->
+                current == null || current.isExpired(now) ? created : current);
+        sweepIfNeeded();
+        return result == created;
+    }
+
+    @Override
+    public void delete(String key) {
+        entries.remove(key);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static long expiresAt(Duration ttl) {
+        return System.nanoTime() + ttl.toNanos();
+    }
+
+    private void sweepIfNeeded() {
+        if (entries.size() <= sweepThreshold || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            entries.values().removeIf(entry -> entry.isExpired(now));
+            Iterator<String> iterator = entries.keySet().iterator();
+            while (entries.size() > maxEntries && iterator.hasNext()) {
+                if (evictable.test(iterator.next())) {
+                    iterator.remove();
+                }
+            }
+            int size = entries.size();
+            if (size > maxEntries) {
+                // Lo que queda no se puede desalojar: no volver a barrer hasta crecer otro 10%
+                sweepThreshold = size + Math.max(1, maxEntries / 10);
+                log.warn("In-memory shared state holds {} non-evictable entries over its limit of {}",
+                        size - maxEntries, maxEntries);
+            } else {
+                sweepThreshold = maxEntries;
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private record Entry(String value, long expiresAt) {
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.utn.tup.psbackmercadopago.state;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Near-cache local delante de un {@link SharedStateStore} remoto. Las lecturas que aciertan en el
+ * nodo no hacen round trip; las escrituras pasan al remoto y actualizan la copia local.
+ * La copia local vive como máximo {@code nearTtl}, que acota cuánto puede ver un nodo un valor viejo;
+ * como es solo una copia, al llenarse se puede desalojar cualquier clave.
+ */
+public class NearCachedSharedStateStore implements SharedStateStore {
+
+    private final SharedStateStore remote;
+    private final InMemorySharedStateStore near;
+    private final Duration nearTtl;
+
+    private final Counter nearHits;
+    private final Counter remoteReads;
+
+    public NearCachedSharedStateStore(SharedStateStore remote, Duration nearTtl, int maxEntries,
+                                      MeterRegistry meterRegistry) {
+        this.remote = remote;
+        this.near = new InMemorySharedStateStore(maxEntries, key -> true);
+        this.nearTtl = nearTtl;
+        this.nearHits = Counter.builder("mp.state.reads").tag("source", "near")
+                .description("Lecturas del estado compartido").register(meterRegistry);
+        this.remoteReads = Counter.builder("mp.state.reads").tag("source", "remote")
+                .description("Lecturas del estado compartido").register(meterRegistry);
+    }
+
+    @Override
+    public Optional<String> get(String key) {
+        Optional<String> local = near.get(key);
+        if (local.isPresent()) {
+            nearHits.increment();
+            return local;
+        }
+        remoteReads.increment();
+        Optional<String> value = remote.get(key);
+        value.ifPresent(v -> near.put(key, v, nearTtl));
+        return value;
+    }
+
+    @Override
+    public Map<String, String> getAll(Collection<String> keys) {
+        Map<String, String> found = new HashMap<>(near.getAll(keys));
+        nearHits.increment(found.size());
+        if (found.size() == keys.size()) {
+            return found;
+        }
+        List<String> missing = new ArrayList<>(keys.size() - found.size());
+        for (String key : keys) {
+            if (!found.containsKey(key)) {
+                missing.add(key);
+            }
+        }
+        remoteReads.increment(missing.size());
+        Map<String, String> fetched = remote.getAll(missing);
+        near.putAll(fetched, nearTtl);
+        found.putAll(fetched);
+        return found;
+    }
+
+    @Override
+    public void put(String key, String value, Duration ttl) {
+        remote.put(key, value, ttl);
+        near.put(key, value, min(ttl, nearTtl));
+    }
+
+    @Override
+    public void putAll(Map<String, String> entries, Duration ttl) {
+        remote.putAll(entries, ttl);
+        near.putAll(entries, min(ttl, nearTtl));
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, String value, Duration ttl) {
+        // Si este nodo ya la vio no hace falta preguntar al remoto
+        if (near.get(key).isPresent()) {
+            nearHits.increment();
+            return false;
+        }
+        boolean stored = remote.putIfAbsent(key, value, ttl);
+        // Si la ganó otra réplica el valor vigente es el suyo, no el nuestro
+        if (stored) {
+            near.put(key, value, min(ttl, nearTtl));
+        }
+        return stored;
+    }
+
+    @Override
+    public void delete(String key) {
+        remote.delete(key);
+        near.delete(key);
+    }
+
+    @Override
+    public void close() {
+        remote.close();
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+}
@@ -0,0 +1,144 @@
+package org.utn.tup.psbackmercadopago.state;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implementación sobre Redis (protocolo RESP, cliente Lettuce). Usa una única conexión
+ * compartida y thread-safe; los comandos asincrónicos que se emiten seguidos viajan en pipeline,
+ * así que {@link #putAll} es un solo round trip y {@link #getAll} un único {@code MGET}.
+ * <p>
+ * Redis caído al arrancar no impide levantar el servicio: la conexión se abre en el primer uso y,
+ * si falla, las operaciones fallan rápido durante unos segundos antes de reintentar
+ * (quien usa el store degrada a no compartir). Una vez conectada, Lettuce reconecta sola y, mientras
+ * la conexión está caída, rechaza los comandos en lugar de encolarlos hasta el timeout.
+ */
+@Slf4j
+public class RedisSharedStateStore implements SharedStateStore {
+
+    private static final long RECONNECT_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final RedisClient client;
+    private final RedisURI uri;
+    private final Duration timeout;
+
+    private volatile StatefulRedisConnection<String, String> connection;
+    private long nextConnectAttempt;
+
+    public RedisSharedStateStore(String redisUri, Duration timeout) {
+        this.uri = RedisURI.create(redisUri);
+        this.uri.setTimeout(timeout);
+        this.client = RedisClient.create(uri);
+        this.client.setOptions(ClientOptions.builder()
+                .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                .build());
+        this.timeout = timeout;
+        try {
+            connection();
+        } catch (RedisConnectionException e) {
+            log.warn("Redis at {}:{} is not reachable, starting without shared state: {}",
+                    uri.getHost(), uri.getPort(), e.getMessage());
+        }
+    }
+
+    @Override
+    public Optional<String> get(String key) {
+        return Optional.ofNullable(connection().sync().get(key));
+    }
+
+    @Override
+    public Map<String, String> getAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, String> found = new HashMap<>();
+        for (KeyValue<String, String> keyValue : connection().sync().mget(keys.toArray(String[]::new))) {
+            if (keyValue.hasValue()) {
+                found.put(keyValue.getKey(), keyValue.getValue());
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void put(String key, String value, Duration ttl) {
+        connection().sync().set(key, value, SetArgs.Builder.px(ttl));
+    }
+
+    @Override
+    public void putAll(Map<String, String> entries, Duration ttl) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        RedisAsyncCommands<String, String> async = connection().async();
+        SetArgs args = SetArgs.Builder.px(ttl);
+        List<RedisFuture<String>> futures = new ArrayList<>(entries.size());
+        entries.forEach((key, value) -> futures.add(async.set(key, value, args)));
+        if (!LettuceFutures.awaitAll(timeout, futures.toArray(RedisFuture[]::new))) {
+            throw new IllegalStateException("Timed out writing " + entries.size() + " keys to Redis");
+        }
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, String value, Duration ttl) {
+        return "OK".equals(connection().sync().set(key, value, SetArgs.Builder.nx().px(ttl)));
+    }
+
+    @Override
+    public void delete(String key) {
+        connection().sync().del(key);
+    }
+
+    @Override
+    public void close() {
+        StatefulRedisConnection<String, String> current = connection;
+        if (current != null) {
+            current.close();
+        }
+        client.shutdown();
+    }
+
+    private StatefulRedisConnection<String, String> connection() {
+        StatefulRedisConnection<String, String> current = connection;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (connection != null) {
+                return connection;
+            }
+            long now = System.nanoTime();
+            if (nextConnectAttempt != 0 && now - nextConnectAttempt < 0) {
+                throw new RedisConnectionException("Redis unavailable, next connection attempt in "
+                        + TimeUnit.NANOSECONDS.toMillis(nextConnectAttempt - now) + " ms");
+            }
+            try {
+                connection = client.connect();
+                nextConnectAttempt = 0;
+                log.info("Shared state store connected to Redis at {}:{}", uri.getHost(), uri.getPort());
+                return connection;
+            } catch (RedisConnectionException e) {
+                nextConnectAttempt = now + RECONNECT_BACKOFF_NANOS;
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.utn.tup.psbackmercadopago.state;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Estado compartido entre réplicas del servicio: estados de pago, claves de deduplicación de
+ * webhooks y registros de idempotencia de donaciones. Los valores son strings (JSON) con TTL.
+ * <p>
+ * Las operaciones por lote ({@link #getAll}, {@link #putAll}) deben resolverse en un único
+ * round trip cuando el almacenamiento es remoto.
+ */
+public interface SharedStateStore extends AutoCloseable {
+
+    Optional<String> get(String key);
+
+    /**
+     * @return solo las claves encontradas
+     */
+    Map<String, String> getAll(Collection<String> keys);
+
+    void put(String key, String value, Duration ttl);
+
+    void putAll(Map<String, String> entries, Duration ttl);
+
+    /**
+     * @return true si la clave no existía y se guardó
+     */
+    boolean putIfAbsent(String key, String value, Duration ttl);
+
+    void delete(String key);
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,85 @@
+package org.utn.tup.psbackmercadopago.Config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.utn.tup.psbackmercadopago.Controller.DonationController;
+import org.utn.tup.psbackmercadopago.Exceptions.GlobalExceptionHandler;
+import org.utn.tup.psbackmercadopago.service.DonationService;
+import org.utn.tup.psbackmercadopago.service.NotificationDrainCoordinator;
+import org.utn.tup.psbackmercadopago.service.PaymentService;
+import org.utn.tup.psbackmercadopago.service.SharedPaymentState;
+import org.utn.tup.psbackmercadopago.service.TenantRegistry;
+import org.utn.tup.psbackmercadopago.service.TerminalStatusResponseCache;
+import org.utn.tup.psbackmercadopago.service.WebhookSignatureVerifier;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class TenantInterceptorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TenantRegistry tenantRegistry;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        TenantProperties properties = new TenantProperties();
+        TenantProperties.Tenant shelter = new TenantProperties.Tenant();
+        shelter.setAccessToken("TEST-token");
+        properties.getTenants().put("shelter-a", shelter);
+        tenantRegistry = new TenantRegistry(properties, "TEST-default-token",
+                new WebhookSignatureVerifier("", Duration.ofMinutes(10), meterRegistry), meterRegistry);
+
+        PaymentService paymentService = mock(PaymentService.class);
+        when(paymentService.getPaymentStatusByReference(anyString())).thenReturn(Optional.empty());
+        DonationController controller = new DonationController(mock(DonationService.class), paymentService,
+                tenantRegistry, mock(NotificationDrainCoordinator.class),
+                mock(SharedPaymentState.class), mock(TerminalStatusResponseCache.class));
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .addMappedInterceptors(new String[]{"/api/**"}, new TenantInterceptor(tenantRegistry, meterRegistry))
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        tenantRegistry.close();
+    }
+
+    @Test
+    void unknownTenantIsBadRequest() throws Exception {
+        mockMvc.perform(get("/api/donation/status/by-reference/DONATION-0001")
+                        .header(TenantInterceptor.TENANT_HEADER, "shelter-x"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Cuenta de MercadoPago desconocida: shelter-x"));
+
+        mockMvc.perform(get("/api/donation/success").param(TenantInterceptor.TENANT_PARAM, "shelter-x"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void requestsWithoutTenantAreCountedWhenSeveralTenantsExist() throws Exception {
+        mockMvc.perform(get("/api/donation/status/by-reference/DONATION-0001")
+                        .header(TenantInterceptor.TENANT_HEADER, "shelter-a"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/donation/status/by-reference/DONATION-0002"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/donation/status/by-reference/DONATION-0003"))
+                .andExpect(status().isNotFound());
+
+        assertEquals(2.0, meterRegistry.get("mp.tenant.defaulted")
+                .tag("path", "/api/donation/status/by-reference/{externalReference}").counter().count());
+    }
+}
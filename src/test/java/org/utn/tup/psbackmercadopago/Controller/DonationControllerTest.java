@@ -0,0 +1,57 @@
+package org.utn.tup.psbackmercadopago.Controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.utn.tup.psbackmercadopago.Exceptions.GlobalExceptionHandler;
+import org.utn.tup.psbackmercadopago.dto.PaymentStatusDto;
+import org.utn.tup.psbackmercadopago.service.DonationService;
+import org.utn.tup.psbackmercadopago.service.NotificationDrainCoordinator;
+import org.utn.tup.psbackmercadopago.service.PaymentService;
+import org.utn.tup.psbackmercadopago.service.SharedPaymentState;
+import org.utn.tup.psbackmercadopago.service.TenantRegistry;
+import org.utn.tup.psbackmercadopago.service.TerminalStatusResponseCache;
+
+import java.util.Optional;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class DonationControllerTest {
+
+    private final PaymentService paymentService = mock(PaymentService.class);
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        DonationController controller = new DonationController(mock(DonationService.class), paymentService,
+                mock(TenantRegistry.class), mock(NotificationDrainCoordinator.class),
+                mock(SharedPaymentState.class), mock(TerminalStatusResponseCache.class));
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    @Test
+    void statusByReferenceReturnsLatestPayment() throws Exception {
+        when(paymentService.getPaymentStatusByReference("DONATION-0001")).thenReturn(Optional.of(
+                PaymentStatusDto.builder().paymentId("42").status("approved").externalReference("DONATION-0001").build()));
+
+        mockMvc.perform(get("/api/donation/status/by-reference/DONATION-0001"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.paymentId").value("42"))
+                .andExpect(jsonPath("$.status").value("approved"));
+    }
+
+    @Test
+    void statusByReferenceWithoutPaymentsIsNotFound() throws Exception {
+        when(paymentService.getPaymentStatusByReference("DONATION-0002")).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/donation/status/by-reference/DONATION-0002"))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,56 @@
+package org.utn.tup.psbackmercadopago.Exceptions;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ErrorBodyWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final ErrorBodyWriter writer = new ErrorBodyWriter();
+
+    @Test
+    void matchesJacksonSerializationOfErrorResponse() throws Exception {
+        String message = "Pago \"123\" no encontrado\n\tcon acentos: ñ á";
+        String path = "/api/donation/status/123";
+
+        JsonNode written = objectMapper.readTree(writer.write(HttpStatus.BAD_GATEWAY, "Upstream Service Error", message, path));
+        JsonNode expected = objectMapper.readTree(objectMapper.writeValueAsBytes(GlobalExceptionHandler.ErrorResponse.builder()
+                .timestamp(LocalDateTime.now())
+                .status(502)
+                .error("Upstream Service Error")
+                .message(message)
+                .path(path)
+                .build()));
+
+        LocalDateTime timestamp = LocalDateTime.parse(written.get("timestamp").asText());
+        assertTrue(Math.abs(Duration.between(timestamp, LocalDateTime.now()).toSeconds()) < 5);
+        ((ObjectNode) written).remove("timestamp");
+        ((ObjectNode) expected).remove("timestamp");
+        assertEquals(expected, written);
+    }
+
+    @Test
+    void sameErrorNameWithAnotherStatusKeepsItsStatus() throws Exception {
+        writer.write(HttpStatus.BAD_GATEWAY, "Upstream Service Error", "a", "/x");
+
+        JsonNode other = objectMapper.readTree(writer.write(HttpStatus.SERVICE_UNAVAILABLE, "Upstream Service Error", null, "/x"));
+        JsonNode original = objectMapper.readTree(writer.write(HttpStatus.BAD_GATEWAY, "Upstream Service Error", "a", "/x"));
+
+        assertEquals(503, other.get("status").asInt());
+        assertTrue(other.get("message").isNull());
+        assertEquals(502, original.get("status").asInt());
+    }
+}
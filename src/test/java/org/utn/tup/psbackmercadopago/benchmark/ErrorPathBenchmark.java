@@ -0,0 +1,129 @@
+package org.utn.tup.psbackmercadopago.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.utn.tup.psbackmercadopago.Exceptions.GlobalExceptionHandler;
+import org.utn.tup.psbackmercadopago.Exceptions.PaymentProcessingException;
+import org.utn.tup.psbackmercadopago.Exceptions.UpstreamServiceException;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput del camino de error durante una caída de MercadoPago: cada pedido falla en el
+ * servicio y el error se convierte en el cuerpo de la respuesta.
+ * <ul>
+ *     <li>{@code legacy}: excepción con stack trace completo, trace escrito en cada pedido,
+ *     path armado con {@code getDescription(false).replace("uri=", "")} y {@code ErrorResponse}
+ *     serializado con Jackson.</li>
+ *     <li>{@code current}: {@link UpstreamServiceException} sin stack trace y el
+ *     {@link GlobalExceptionHandler} actual, con su logging real (limitado por tipo de error)
+ *     y el cuerpo armado por {@code ErrorBodyWriter}.</li>
+ * </ul>
+ * Los dos loguean a un appender de Logback con el patrón habitual sobre un stream nulo, para medir
+ * el formateo y no la consola. {@code legacy} escribe el trace en un writer propio de cada hilo,
+ * así la contención de un lock compartido no infla la diferencia.
+ * Se ejecuta igual que {@link WebhookSignatureBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ErrorPathBenchmark {
+
+    /** Profundidad aproximada del stack de Tomcat + Spring MVC al llegar al servicio. */
+    private static final int STACK_DEPTH = 120;
+
+    private GlobalExceptionHandler handler;
+    private MockHttpServletRequest request;
+    private Exception upstreamCause;
+    private ObjectMapper objectMapper;
+
+    @State(Scope.Thread)
+    public static class ThreadWriter {
+        private final PrintWriter writer = new PrintWriter(Writer.nullWriter());
+    }
+
+    @Setup
+    public void setup() {
+        Logger logger = (Logger) LoggerFactory.getLogger(GlobalExceptionHandler.class);
+        LoggerContext context = logger.getLoggerContext();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} %5level --- [%thread] %logger{39} : %msg%n");
+        encoder.start();
+        OutputStreamAppender<ILoggingEvent> appender = new OutputStreamAppender<>();
+        appender.setContext(context);
+        appender.setEncoder(encoder);
+        appender.setOutputStream(OutputStream.nullOutputStream());
+        appender.start();
+        logger.detachAndStopAllAppenders();
+        logger.addAppender(appender);
+        logger.setAdditive(false);
+        logger.setLevel(Level.INFO);
+
+        handler = new GlobalExceptionHandler();
+        request = new MockHttpServletRequest("GET", "/api/donation/status/123456789");
+        // La causa la crea el SDK en ambos casos, así que se comparte
+        upstreamCause = new RuntimeException("Api error. Check response for details");
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    @Benchmark
+    public byte[] legacy(ThreadWriter thread) throws Exception {
+        try {
+            failAt(STACK_DEPTH, true);
+            return null;
+        } catch (PaymentProcessingException ex) {
+            ex.printStackTrace(thread.writer);
+            return objectMapper.writeValueAsBytes(GlobalExceptionHandler.ErrorResponse.builder()
+                    .timestamp(LocalDateTime.now())
+                    .status(500)
+                    .error("Payment Processing Error")
+                    .message(ex.getMessage())
+                    .path(new ServletWebRequest(request).getDescription(false).replace("uri=", ""))
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> current() {
+        try {
+            failAt(STACK_DEPTH, false);
+            return null;
+        } catch (PaymentProcessingException ex) {
+            return handler.handlePaymentProcessingException(ex, request);
+        }
+    }
+
+    private void failAt(int depth, boolean legacy) {
+        if (depth > 0) {
+            failAt(depth - 1, legacy);
+            return;
+        }
+        if (legacy) {
+            throw new PaymentProcessingException("Error al obtener el estado del pago", upstreamCause);
+        }
+        throw new UpstreamServiceException("Error al obtener el estado del pago", 503, upstreamCause);
+    }
+}
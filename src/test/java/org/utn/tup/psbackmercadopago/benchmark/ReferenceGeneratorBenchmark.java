@@ -0,0 +1,55 @@
+package org.utn.tup.psbackmercadopago.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.utn.tup.psbackmercadopago.service.ExternalReferenceGenerator;
+import org.utn.tup.psbackmercadopago.service.SnowflakeReferenceGenerator;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput del generador de referencias con varios hilos compitiendo por el mismo estado,
+ * contra la referencia anterior basada en {@code UUID.randomUUID()}.
+ * <p>
+ * Ejecutar con:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main ReferenceGeneratorBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class ReferenceGeneratorBenchmark {
+
+    private ExternalReferenceGenerator generator;
+
+    @Setup
+    public void setup() {
+        generator = new SnowflakeReferenceGenerator("DONATION-", 1, true);
+    }
+
+    @Benchmark
+    public String snowflake() {
+        return generator.next();
+    }
+
+    @Benchmark
+    public String legacyUuid() {
+        return "DONATION-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ReferenceGeneratorBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
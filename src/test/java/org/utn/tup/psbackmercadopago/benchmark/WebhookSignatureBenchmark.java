@@ -0,0 +1,86 @@
+package org.utn.tup.psbackmercadopago.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.utn.tup.psbackmercadopago.service.WebhookSignatureVerifier;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo de verificar la firma de un webhook: firma válida, firma falsa, ts vencido y cabecera malformada.
+ * <p>
+ * Ejecutar con:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main WebhookSignatureBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebhookSignatureBenchmark {
+
+    private static final String SECRET = "benchmark-secret";
+    private static final String DATA_ID = "123456789";
+    private static final String REQUEST_ID = "bb56a2f1-6aae-46ac-982e-9dcd3581d08e";
+
+    private WebhookSignatureVerifier verifier;
+    private String validSignature;
+    private String forgedSignature;
+    private String malformedSignature;
+    private String staleSignature;
+
+    @Setup
+    public void setup() throws Exception {
+        verifier = new WebhookSignatureVerifier(SECRET, Duration.ofHours(1), new SimpleMeterRegistry());
+        String ts = String.valueOf(System.currentTimeMillis() / 1000);
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        String manifest = "id:" + DATA_ID + ";request-id:" + REQUEST_ID + ";ts:" + ts + ";";
+        String hash = HexFormat.of().formatHex(mac.doFinal(manifest.getBytes(StandardCharsets.UTF_8)));
+
+        validSignature = "ts=" + ts + ",v1=" + hash;
+        forgedSignature = "ts=" + ts + ",v1=" + "0".repeat(64);
+        malformedSignature = "ts=" + ts;
+        staleSignature = "ts=1704908010,v1=" + hash;
+    }
+
+    @Benchmark
+    public WebhookSignatureVerifier.Result validSignature() {
+        return verifier.verify(validSignature, REQUEST_ID, DATA_ID);
+    }
+
+    @Benchmark
+    public WebhookSignatureVerifier.Result forgedSignature() {
+        return verifier.verify(forgedSignature, REQUEST_ID, DATA_ID);
+    }
+
+    @Benchmark
+    public WebhookSignatureVerifier.Result staleSignature() {
+        return verifier.verify(staleSignature, REQUEST_ID, DATA_ID);
+    }
+
+    @Benchmark
+    public WebhookSignatureVerifier.Result malformedSignature() {
+        return verifier.verify(malformedSignature, REQUEST_ID, DATA_ID);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WebhookSignatureBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
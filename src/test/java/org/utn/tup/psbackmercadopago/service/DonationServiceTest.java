@@ -0,0 +1,114 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mercadopago.client.preference.PreferenceClient;
+import com.mercadopago.client.preference.PreferenceRequest;
+import com.mercadopago.core.MPRequestOptions;
+import com.mercadopago.resources.preference.Preference;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.utn.tup.psbackmercadopago.Exceptions.IdempotencyConflictException;
+import org.utn.tup.psbackmercadopago.Exceptions.UpstreamServiceException;
+import org.utn.tup.psbackmercadopago.dto.DonationRequestDto;
+import org.utn.tup.psbackmercadopago.dto.DonationResponseDto;
+import org.utn.tup.psbackmercadopago.state.InMemorySharedStateStore;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DonationServiceTest {
+
+    private final PreferenceClient preferenceClient = mock(PreferenceClient.class);
+    private final SharedPaymentState sharedState = new SharedPaymentState(
+            new InMemorySharedStateStore(1000, SharedPaymentState::isRebuildable),
+            new ObjectMapper().registerModule(new JavaTimeModule()),
+            Duration.ofSeconds(10), Duration.ofHours(24), Duration.ofHours(1), Duration.ofHours(24),
+            Duration.ofMinutes(1));
+    private DonationService donationService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MercadoPagoTenant tenant = mock(MercadoPagoTenant.class);
+        when(tenant.getPreferenceClient()).thenReturn(preferenceClient);
+        when(tenant.getRequestOptions()).thenReturn(MPRequestOptions.createDefault());
+        when(tenant.call(any())).thenAnswer(invocation -> ((Callable<?>) invocation.getArgument(0)).call());
+        TenantRegistry tenantRegistry = mock(TenantRegistry.class);
+        when(tenantRegistry.current()).thenReturn(tenant);
+
+        SnowflakeReferenceGenerator generator = new SnowflakeReferenceGenerator("DONATION-", 1);
+        donationService = new DonationService(new PaymentReferenceIndex(generator, 1000, Duration.ofHours(24),
+                Duration.ofHours(6), Duration.ofMinutes(1)), generator, tenantRegistry, sharedState);
+        ReflectionTestUtils.setField(donationService, "baseUrl", "http://localhost:8082");
+        ReflectionTestUtils.setField(donationService, "frontendUrl", "http://localhost:4200");
+    }
+
+    @Test
+    void retryWithSameKeyAndBodyReturnsTheSameDonation() throws Exception {
+        stubPreference("pref-1");
+
+        DonationResponseDto first = donationService.createDonation(request("1500"), "key-1");
+        DonationResponseDto retry = donationService.createDonation(request("1500"), "key-1");
+
+        assertEquals("pref-1", first.getPreferenceId());
+        assertEquals(first.getExternalReference(), retry.getExternalReference());
+        verify(preferenceClient, times(1)).create(any(PreferenceRequest.class), any(MPRequestOptions.class));
+    }
+
+    @Test
+    void sameKeyWithDifferentBodyIsRejected() throws Exception {
+        stubPreference("pref-1");
+        donationService.createDonation(request("1500"), "key-1");
+
+        IdempotencyConflictException e = assertThrows(IdempotencyConflictException.class,
+                () -> donationService.createDonation(request("2000"), "key-1"));
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, e.getStatus());
+    }
+
+    @Test
+    void sameKeyWhileFirstRequestIsInFlightIsConflict() {
+        // Otra réplica ya reservó la clave y todavía no terminó
+        sharedState.claimDonation("key-1", sharedState.requestHash(request("1500")));
+
+        IdempotencyConflictException e = assertThrows(IdempotencyConflictException.class,
+                () -> donationService.createDonation(request("1500"), "key-1"));
+        assertEquals(HttpStatus.CONFLICT, e.getStatus());
+    }
+
+    @Test
+    void failedCreationReleasesTheKey() throws Exception {
+        when(preferenceClient.create(any(PreferenceRequest.class), any(MPRequestOptions.class)))
+                .thenThrow(new UpstreamServiceException("MercadoPago caído", 503, null));
+        assertThrows(UpstreamServiceException.class, () -> donationService.createDonation(request("1500"), "key-1"));
+
+        stubPreference("pref-2");
+        assertEquals("pref-2", donationService.createDonation(request("1500"), "key-1").getPreferenceId());
+    }
+
+    private void stubPreference(String preferenceId) throws Exception {
+        Preference preference = mock(Preference.class);
+        when(preference.getId()).thenReturn(preferenceId);
+        doReturn(preference).when(preferenceClient).create(any(PreferenceRequest.class), any(MPRequestOptions.class));
+    }
+
+    private static DonationRequestDto request(String amount) {
+        return DonationRequestDto.builder()
+                .amount(new BigDecimal(amount))
+                .description("Donación")
+                .payerEmail("ana@example.com")
+                .payerName("Ana")
+                .build();
+    }
+}
@@ -0,0 +1,277 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import com.mercadopago.client.payment.PaymentClient;
+import com.mercadopago.exceptions.MPException;
+import com.mercadopago.net.MPHttpClient;
+import com.mercadopago.net.MPRequest;
+import com.mercadopago.net.MPResponse;
+import com.mercadopago.resources.payment.Payment;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgedReadExecutorTest {
+
+    private static final String TENANT = "default";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private HedgedReadExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        if (executor != null) {
+            executor.close();
+        }
+    }
+
+    @Test
+    void hedgeWinsWhenPrimaryIsSlowAndLoserIsCancelled() throws Exception {
+        executor = newExecutor(1.0);
+        LatencyInjectingHttpClient upstream = new LatencyInjectingHttpClient(2000, 10);
+        PaymentClient client = new PaymentClient(upstream);
+
+        long start = System.nanoTime();
+        Payment payment = executor.call(TENANT, () -> client.get(42L));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(42L, payment.getId());
+        assertTrue(elapsedMillis < 1000, "hedge should answer long before the slow primary: " + elapsedMillis);
+        assertEquals(1.0, counter("mp.payment.hedge.fired", TENANT));
+        assertEquals(1.0, counter("mp.payment.hedge.wins", TENANT));
+        assertTrue(upstream.awaitAborted(1), "slow primary should be aborted, not left blocked");
+    }
+
+    @Test
+    void loserBlockedOnARealSocketReadIsAborted() throws Exception {
+        executor = newExecutor(1.0);
+        try (ServerSocket silentServer = new ServerSocket(0);
+             CloseableHttpClient httpClient = HttpClients.custom()
+                     .addInterceptorFirst(CallCancellation.httpInterceptor())
+                     .setDefaultRequestConfig(RequestConfig.custom().setSocketTimeout(30_000).build())
+                     .build()) {
+
+            // Acepta la conexión y nunca responde: la lectura queda bloqueada en el socket
+            Thread acceptor = new Thread(() -> {
+                try {
+                    silentServer.accept();
+                } catch (IOException ignored) {
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            AtomicInteger calls = new AtomicInteger();
+            CountDownLatch primaryFinished = new CountDownLatch(1);
+            String result = executor.call(TENANT, () -> {
+                if (calls.getAndIncrement() > 0) {
+                    return "hedge";
+                }
+                try (CloseableHttpResponse ignored = httpClient.execute(
+                        new HttpGet("http://localhost:" + silentServer.getLocalPort() + "/v1/payments/1"))) {
+                    return "primary";
+                } finally {
+                    primaryFinished.countDown();
+                }
+            });
+
+            assertEquals("hedge", result);
+            assertTrue(primaryFinished.await(2, TimeUnit.SECONDS),
+                    "the blocked socket read should be aborted instead of waiting for the 30s timeout");
+        }
+    }
+
+    @Test
+    void readsRunInlineWithoutHedgeWhenPoolIsFull() throws Exception {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS, new SynchronousQueue<>());
+        executor = new HedgedReadExecutor(true, pool, 0.95, Duration.ofMillis(20), Duration.ofMillis(100), 1.0,
+                meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+        pool.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+
+        try {
+            String caller = Thread.currentThread().getName();
+            assertEquals(caller, executor.call(TENANT, () -> Thread.currentThread().getName()));
+            assertEquals(1.0, counter("mp.payment.hedge.rejected", TENANT));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void noHedgeWhenBudgetIsExhausted() throws Exception {
+        executor = newExecutor(0.0);
+        PaymentClient client = new PaymentClient(new LatencyInjectingHttpClient(300, 300, 300, 300, 300,
+                300, 300, 300, 300, 300, 300, 300));
+
+        // El presupuesto inicial permite 10 hedges, después ninguno porque el ratio es 0
+        for (int i = 0; i < 11; i++) {
+            executor.call(TENANT, () -> client.get(1L));
+        }
+
+        assertEquals(10.0, counter("mp.payment.hedge.fired", TENANT));
+        assertEquals(1.0, counter("mp.payment.hedge.budget.exhausted", TENANT));
+    }
+
+    @Test
+    void thresholdAdaptsToObservedPercentile() throws Exception {
+        executor = newExecutor(1.0);
+        PaymentClient client = new PaymentClient(new LatencyInjectingHttpClient(5));
+
+        for (int i = 0; i < 40; i++) {
+            executor.call(TENANT, () -> client.get(1L));
+        }
+
+        long thresholdMillis = TimeUnit.NANOSECONDS.toMillis(executor.currentThresholdNanos(TENANT));
+        assertTrue(thresholdMillis >= 20 && thresholdMillis < 200,
+                "threshold should follow p95 clamped to the minimum delay: " + thresholdMillis);
+        assertEquals(0.0, counter("mp.payment.hedge.fired", TENANT));
+    }
+
+    @Test
+    void thresholdAndBudgetAreKeptPerTenant() throws Exception {
+        executor = newExecutor(0.0);
+        PaymentClient slow = new PaymentClient(new LatencyInjectingHttpClient(150));
+        PaymentClient fast = new PaymentClient(new LatencyInjectingHttpClient(5));
+
+        // La cuenta lenta agota su presupuesto inicial de 10 hedges
+        for (int i = 0; i < 11; i++) {
+            executor.call("slow", () -> slow.get(1L));
+        }
+        // La otra cuenta conserva el suyo y su propio umbral
+        for (int i = 0; i < 40; i++) {
+            executor.call("fast", () -> fast.get(1L));
+        }
+
+        assertEquals(1.0, counter("mp.payment.hedge.budget.exhausted", "slow"));
+        assertEquals(0.0, counter("mp.payment.hedge.budget.exhausted", "fast"));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), executor.currentThresholdNanos("slow"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(executor.currentThresholdNanos("fast")) < 100,
+                "fast tenant threshold should not follow the slow one");
+    }
+
+    @Test
+    void slowTenantKeepsItsThresholdNearItsRealPercentile() throws Exception {
+        executor = new HedgedReadExecutor(true, Executors.newCachedThreadPool(), 0.95,
+                Duration.ofMillis(1), Duration.ofMillis(200), 1.0, meterRegistry);
+        // El 85% de las lecturas responde enseguida y el 15% tarda entre 5 y 10 ms: el p95 real ronda los 8 ms
+        Random random = new Random(42);
+        long[] latencies = new long[1500];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = random.nextInt(100) < 85 ? 0 : 5 + random.nextInt(6);
+        }
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        long realP95 = sorted[(int) Math.ceil(0.95 * sorted.length) - 1];
+
+        for (long latency : latencies) {
+            AtomicInteger attempts = new AtomicInteger();
+            // El hedge responde enseguida: si el primario lento pierde, solo su aborto dice cuánto tardaba
+            executor.call("slow", () -> {
+                Thread.sleep(attempts.getAndIncrement() == 0 ? latency : 0);
+                return latency;
+            });
+        }
+
+        long thresholdMillis = TimeUnit.NANOSECONDS.toMillis(executor.currentThresholdNanos("slow"));
+        assertTrue(thresholdMillis >= realP95 * 0.7,
+                "aborted slow primaries must keep the threshold near p95 " + realP95 + " ms: " + thresholdMillis);
+        assertTrue(counter("mp.payment.hedge.wins", "slow") > 0);
+    }
+
+    private double counter(String name, String tenant) {
+        return meterRegistry.get(name).tag("tenant", tenant).counter().count();
+    }
+
+    private HedgedReadExecutor newExecutor(double budgetRatio) {
+        return new HedgedReadExecutor(true, Executors.newCachedThreadPool(), 0.95,
+                Duration.ofMillis(20), Duration.ofMillis(100), budgetRatio, meterRegistry);
+    }
+
+    /**
+     * Reemplazo local de la API de MercadoPago: responde un pago con la latencia configurada
+     * para cada llamada sucesiva (la última se repite).
+     * <p>
+     * Como una lectura de socket, la espera ignora las interrupciones: solo termina antes si la
+     * llamada se aborta por {@link CallCancellation}.
+     */
+    private static class LatencyInjectingHttpClient implements MPHttpClient {
+
+        private final long[] latenciesMillis;
+        private final AtomicInteger calls = new AtomicInteger();
+        private final ConcurrentLinkedQueue<Integer> aborted = new ConcurrentLinkedQueue<>();
+
+        LatencyInjectingHttpClient(long... latenciesMillis) {
+            this.latenciesMillis = latenciesMillis;
+        }
+
+        @Override
+        public MPResponse send(MPRequest request) throws MPException {
+            int call = calls.getAndIncrement();
+            CountDownLatch abort = new CountDownLatch(1);
+            CallCancellation.register(abort::countDown);
+
+            long deadline = System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(latenciesMillis[Math.min(call, latenciesMillis.length - 1)]);
+            boolean interrupted = false;
+            try {
+                while (abort.getCount() > 0 && System.nanoTime() < deadline) {
+                    try {
+                        abort.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (abort.getCount() == 0) {
+                aborted.add(call);
+                throw new MPException("Request aborted");
+            }
+
+            String uri = request.getUri();
+            String id = uri.substring(uri.lastIndexOf('/') + 1);
+            Map<String, List<String>> headers = Collections.emptyMap();
+            return new MPResponse(200, headers, "{\"id\":" + id + ",\"status\":\"approved\"}");
+        }
+
+        boolean awaitAborted(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 1000;
+            while (aborted.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            return aborted.size() >= count;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.utn.tup.psbackmercadopago.Exceptions.UpstreamServiceException;
+import org.utn.tup.psbackmercadopago.dto.PaymentStatusDto;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NotificationDrainCoordinatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PaymentService paymentService = mock(PaymentService.class);
+    private final List<String> processed = new CopyOnWriteArrayList<>();
+
+    private Path spillFile;
+    private Path replayingFile;
+    private NotificationDrainCoordinator coordinator;
+
+    @BeforeEach
+    void setUp() {
+        spillFile = tempDir.resolve("pending-notifications.jsonl");
+        replayingFile = tempDir.resolve("pending-notifications.jsonl.replaying");
+        coordinator = new NotificationDrainCoordinator(paymentService, mock(ApplicationEventPublisher.class),
+                objectMapper, meterRegistry, spillFile, Duration.ofMillis(200));
+        when(paymentService.refreshPaymentStatus(anyString())).thenAnswer(invocation -> {
+            String paymentId = invocation.getArgument(0);
+            processed.add(paymentId);
+            return PaymentStatusDto.builder().paymentId(paymentId).status("approved").build();
+        });
+        coordinator.start();
+    }
+
+    @Test
+    void spillsInFlightWorkWhenDrainTimesOut() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            entered.countDown();
+            release.await();
+            return PaymentStatusDto.builder().paymentId("stuck").build();
+        }).when(paymentService).refreshPaymentStatus("stuck");
+
+        Thread worker = new Thread(() ->
+                coordinator.process(NotificationDrainCoordinator.WorkType.WEBHOOK, "stuck", Map.of()));
+        worker.start();
+        assertTrue(entered.await(2, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        coordinator.stop();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        release.countDown();
+        worker.join(2000);
+
+        assertTrue(elapsedMillis >= 200 && elapsedMillis < 2000, "stop should wait for the drain timeout: " + elapsedMillis);
+        assertEquals(List.of("stuck"), spilledPaymentIds(spillFile));
+        assertEquals(1.0, meterRegistry.get("mp.drain.spilled").counter().count());
+    }
+
+    @Test
+    void spillsWorkArrivingWhileDraining() throws Exception {
+        coordinator.stop();
+
+        Optional<PaymentStatusDto> result = coordinator.process(
+                NotificationDrainCoordinator.WorkType.CALLBACK, "77", Map.of("payment_id", "77"));
+
+        assertTrue(result.isEmpty());
+        assertFalse(coordinator.isAccepting());
+        NotificationDrainCoordinator.PendingWork spilled = readSpilled(spillFile).get(0);
+        assertEquals(NotificationDrainCoordinator.WorkType.CALLBACK, spilled.type());
+        assertEquals(Map.of("payment_id", "77"), spilled.params());
+    }
+
+    @Test
+    void replaysInReceivedOrderAndRespillsFailures() throws Exception {
+        doAnswer(invocation -> {
+            processed.add("fails");
+            throw new UpstreamServiceException("MercadoPago caído", 503, null);
+        }).when(paymentService).refreshPaymentStatus("fails");
+        writeSpill(spillFile,
+                work(3, 3000, "third"),
+                work(1, 1000, "first"),
+                work(9, 2000, "fails"),
+                work(2, 2000, "second"));
+
+        coordinator.replaySpilledWork();
+        awaitReplayFinished();
+
+        // Mismo receivedAt: desempata la secuencia
+        assertEquals(List.of("first", "second", "fails", "third"), processed);
+        assertEquals(List.of("fails"), spilledPaymentIds(spillFile));
+        assertEquals(3.0, meterRegistry.get("mp.drain.replayed").tag("result", "success").counter().count());
+        assertEquals(1.0, meterRegistry.get("mp.drain.replayed").tag("result", "failure").counter().count());
+    }
+
+    @Test
+    void replayedCallbackWhosePaymentCannotBeFetchedIsRespilled() throws Exception {
+        Map<String, String> params = Map.of("payment_id", "55", "status", "approved");
+        doThrow(new UpstreamServiceException("MercadoPago caído", 503, null))
+                .when(paymentService).processPaymentCallback(params, true);
+        writeSpill(spillFile, new NotificationDrainCoordinator.PendingWork(1, 1000, null,
+                NotificationDrainCoordinator.WorkType.CALLBACK, "55", params));
+
+        coordinator.replaySpilledWork();
+        awaitReplayFinished();
+
+        verify(paymentService, never()).processPaymentCallback(params, false);
+        assertEquals(List.of("55"), spilledPaymentIds(spillFile));
+        assertEquals(0.0, meterRegistry.get("mp.drain.replayed").tag("result", "success").counter().count());
+        assertEquals(1.0, meterRegistry.get("mp.drain.replayed").tag("result", "failure").counter().count());
+    }
+
+    @Test
+    void recoversLeftoverReplayingFileFromInterruptedStartup() throws Exception {
+        writeSpill(replayingFile, work(1, 1000, "left-over"));
+        writeSpill(spillFile, work(1, 2000, "new"));
+
+        coordinator.replaySpilledWork();
+        awaitReplayFinished();
+
+        assertEquals(List.of("left-over", "new"), processed);
+        assertFalse(Files.exists(spillFile));
+    }
+
+    private NotificationDrainCoordinator.PendingWork work(long sequence, long receivedAt, String paymentId) {
+        return new NotificationDrainCoordinator.PendingWork(sequence, receivedAt, null,
+                NotificationDrainCoordinator.WorkType.WEBHOOK, paymentId, Map.of());
+    }
+
+    private void writeSpill(Path file, NotificationDrainCoordinator.PendingWork... works) throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (NotificationDrainCoordinator.PendingWork work : works) {
+            lines.add(objectMapper.writeValueAsString(work));
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    private List<NotificationDrainCoordinator.PendingWork> readSpilled(Path file) throws Exception {
+        List<NotificationDrainCoordinator.PendingWork> works = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            works.add(objectMapper.readValue(line, NotificationDrainCoordinator.PendingWork.class));
+        }
+        return works;
+    }
+
+    private List<String> spilledPaymentIds(Path file) throws Exception {
+        return readSpilled(file).stream().map(NotificationDrainCoordinator.PendingWork::paymentId).toList();
+    }
+
+    // El replay corre en segundo plano y borra el .replaying al terminar
+    private void awaitReplayFinished() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (Files.exists(replayingFile) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(Files.exists(replayingFile), "replay should finish and remove the .replaying file");
+    }
+}
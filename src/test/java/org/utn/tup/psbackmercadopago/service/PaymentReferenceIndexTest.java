@@ -0,0 +1,130 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PaymentReferenceIndexTest {
+
+    private final SnowflakeReferenceGenerator generator = new SnowflakeReferenceGenerator("DONATION-", 1);
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    void tracksPreferenceAndLatestPayment() {
+        PaymentReferenceIndex index = newIndex(100);
+        String reference = generator.next();
+
+        index.recordPreference(reference, "123-pref");
+        assertEquals(OptionalLong.empty(), index.latestPaymentId(reference));
+        assertEquals("123-pref", index.preferenceId(reference));
+
+        index.recordPayment(reference, null, 10, "rejected");
+        index.recordPayment(reference, null, 11, "approved");
+        index.recordPayment(reference, null, 10, "rejected");
+
+        assertEquals(OptionalLong.of(11), index.latestPaymentId(reference));
+        assertEquals("123-pref", index.preferenceId(reference));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void acceptsReferencesNotIssuedByTheGenerator() {
+        PaymentReferenceIndex index = newIndex(100);
+
+        index.recordPayment("LEGACY-1234", "pref", 5, "pending");
+        index.recordPayment("donation-0000000000001", "pref", 6, "pending");
+
+        assertEquals(OptionalLong.of(5), index.latestPaymentId("LEGACY-1234"));
+        assertEquals(OptionalLong.of(6), index.latestPaymentId("donation-0000000000001"));
+        assertEquals(OptionalLong.empty(), index.latestPaymentId("DONATION-0000000000001"));
+    }
+
+    @Test
+    void referencesAreScopedByTenant() {
+        PaymentReferenceIndex index = newIndex(100);
+        String reference = generator.next();
+        try {
+            TenantContext.set("shelter-a");
+            index.recordPayment(reference, "pref-a", 5, "approved");
+            index.recordPayment("LEGACY-1234", "pref-a", 6, "approved");
+
+            // La misma referencia en otra cuenta es otro checkout: su búsqueda vacía no tapa el pago de la primera
+            TenantContext.set("shelter-b");
+            assertEquals(OptionalLong.empty(), index.latestPaymentId(reference));
+            index.recordMiss(reference);
+            index.recordPayment("LEGACY-1234", "pref-b", 7, "pending");
+            assertTrue(index.isRecentMiss(reference));
+            assertEquals(OptionalLong.of(7), index.latestPaymentId("LEGACY-1234"));
+
+            TenantContext.set("shelter-a");
+            assertFalse(index.isRecentMiss(reference));
+            assertEquals(OptionalLong.of(5), index.latestPaymentId(reference));
+            assertEquals(OptionalLong.of(6), index.latestPaymentId("LEGACY-1234"));
+            assertEquals("pref-a", index.preferenceId("LEGACY-1234"));
+        } finally {
+            TenantContext.clear();
+        }
+    }
+
+    @Test
+    void missesAreRememberedUntilTtlOrPayment() {
+        PaymentReferenceIndex index = newIndex(100);
+        String reference = generator.next();
+
+        assertFalse(index.isRecentMiss(reference));
+        index.recordMiss(reference);
+        assertTrue(index.isRecentMiss(reference));
+
+        now.addAndGet(Duration.ofSeconds(11).toMillis());
+        assertFalse(index.isRecentMiss(reference));
+
+        index.recordMiss(reference);
+        index.recordPayment(reference, null, 42, "pending");
+        assertFalse(index.isRecentMiss(reference));
+    }
+
+    @Test
+    void evictsAbandonedPendingEntriesByAge() {
+        PaymentReferenceIndex index = newIndex(10);
+        String abandoned = generator.next();
+        index.recordPreference(abandoned, "pref-abandoned");
+
+        now.addAndGet(Duration.ofHours(7).toMillis());
+        for (int i = 0; i < 10; i++) {
+            index.recordPreference(generator.next(), "pref-" + i);
+        }
+
+        // El barrido deja además un 10% de margen
+        assertNull(index.preferenceId(abandoned));
+        assertEquals(9, index.size());
+    }
+
+    @Test
+    void staysBoundedWhenNothingHasExpired() {
+        PaymentReferenceIndex index = newIndex(100);
+        String first = generator.next();
+        index.recordPreference(first, "pref-first");
+
+        for (int i = 0; i < 1000; i++) {
+            now.incrementAndGet();
+            index.recordPreference(generator.next(), "pref-" + i);
+            assertTrue(index.size() <= 100);
+        }
+
+        // Cada barrido baja al 90%: las menos recientes se van primero
+        assertNull(index.preferenceId(first));
+        assertTrue(index.size() >= 90);
+    }
+
+    private PaymentReferenceIndex newIndex(int maxEntries) {
+        return new PaymentReferenceIndex(generator, maxEntries, Duration.ofHours(24), Duration.ofHours(6),
+                Duration.ofSeconds(10), now::get);
+    }
+}
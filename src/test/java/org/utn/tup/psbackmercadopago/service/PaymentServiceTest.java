@@ -0,0 +1,192 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import com.mercadopago.client.payment.PaymentClient;
+import com.mercadopago.core.MPRequestOptions;
+import com.mercadopago.exceptions.MPApiException;
+import com.mercadopago.net.MPResponse;
+import com.mercadopago.net.MPResultsResourcesPage;
+import com.mercadopago.net.MPSearchRequest;
+import com.mercadopago.resources.payment.Payment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.utn.tup.psbackmercadopago.Exceptions.UpstreamServiceException;
+import org.utn.tup.psbackmercadopago.dto.PaymentStatusDto;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentServiceTest {
+
+    private final SnowflakeReferenceGenerator generator = new SnowflakeReferenceGenerator("DONATION-", 1);
+    private final PaymentReferenceIndex referenceIndex = new PaymentReferenceIndex(generator, 1000,
+            Duration.ofHours(24), Duration.ofHours(6), Duration.ofMinutes(1));
+    private final PaymentClient paymentClient = mock(PaymentClient.class);
+    private final SharedPaymentState sharedState = mock(SharedPaymentState.class);
+    private final TerminalStatusResponseCache responseCache = mock(TerminalStatusResponseCache.class);
+    private PaymentService paymentService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MercadoPagoTenant tenant = mock(MercadoPagoTenant.class);
+        when(tenant.getPaymentClient()).thenReturn(paymentClient);
+        when(tenant.getRequestOptions()).thenReturn(MPRequestOptions.createDefault());
+        when(tenant.call(any())).thenAnswer(invocation -> ((Callable<?>) invocation.getArgument(0)).call());
+        TenantRegistry tenantRegistry = mock(TenantRegistry.class);
+        when(tenantRegistry.current()).thenReturn(tenant);
+
+        when(tenant.getId()).thenReturn(TenantRegistry.DEFAULT_TENANT);
+        HedgedReadExecutor hedgedReads = mock(HedgedReadExecutor.class);
+        when(hedgedReads.call(any(), any())).thenAnswer(invocation -> ((Callable<?>) invocation.getArgument(1)).call());
+
+        paymentService = new PaymentService(referenceIndex, hedgedReads, tenantRegistry,
+                sharedState, responseCache);
+    }
+
+    @Test
+    void searchesOnceAndIndexesTheResult() throws Exception {
+        String reference = generator.next();
+        referenceIndex.recordPreference(reference, "pref-1");
+        MPResultsResourcesPage<Payment> results =
+                page(payment(7L, reference, "pending", 1), payment(8L, reference, "approved", 2));
+        when(paymentClient.search(any(MPSearchRequest.class), any(MPRequestOptions.class))).thenReturn(results);
+        when(sharedState.findStatuses(any())).thenReturn(Map.of(
+                "8", PaymentStatusDto.builder().paymentId("8").status("approved").build()));
+
+        Optional<PaymentStatusDto> fromSearch = paymentService.getPaymentStatusByReference(reference);
+        Optional<PaymentStatusDto> fromIndex = paymentService.getPaymentStatusByReference(reference);
+
+        assertEquals("8", fromSearch.orElseThrow().getPaymentId());
+        assertEquals("approved", fromIndex.orElseThrow().getStatus());
+        verify(paymentClient, times(1)).search(any(MPSearchRequest.class), any(MPRequestOptions.class));
+    }
+
+    @Test
+    void indexedPaymentsAreReadInOneBatchAndTheNewestWins() throws Exception {
+        String reference = generator.next();
+        // El webhook del pago nuevo llegó antes que el del rechazado
+        referenceIndex.recordPayment(reference, null, 8L, "approved");
+        referenceIndex.recordPayment(reference, null, 7L, "rejected");
+        when(sharedState.findStatuses(List.of("8", "7"))).thenReturn(Map.of(
+                "7", status("7", "rejected", 1),
+                "8", status("8", "approved", 2)));
+
+        assertEquals("8", paymentService.getPaymentStatusByReference(reference).orElseThrow().getPaymentId());
+        verify(sharedState, times(1)).findStatuses(any());
+        verify(sharedState, never()).findStatus(any());
+        verify(paymentClient, never()).get(any(Long.class), any(MPRequestOptions.class));
+        verify(paymentClient, never()).search(any(MPSearchRequest.class), any(MPRequestOptions.class));
+    }
+
+    @Test
+    void statusReadUpdatesTheResponseCacheOnce() throws Exception {
+        Payment payment = payment(9L, generator.next(), "approved", 1);
+        when(paymentClient.get(eq(9L), any(MPRequestOptions.class))).thenReturn(payment);
+        TerminalStatusResponseCache.CachedResponse response =
+                new TerminalStatusResponseCache.CachedResponse(new byte[0], "\"etag\"");
+        when(responseCache.update(any())).thenReturn(Optional.of(response));
+
+        PaymentService.StatusResponse fromMercadoPago = paymentService.getPaymentStatus("9");
+
+        assertEquals("approved", fromMercadoPago.status().getStatus());
+        assertEquals(Optional.of(response), fromMercadoPago.cached());
+        verify(responseCache, times(1)).update(any());
+
+        when(sharedState.findStatus("9")).thenReturn(Optional.of(fromMercadoPago.status()));
+        assertEquals(Optional.of(response), paymentService.getPaymentStatus("9").cached());
+        verify(responseCache, times(2)).update(any());
+        verify(paymentClient, times(1)).get(eq(9L), any(MPRequestOptions.class));
+    }
+
+    @Test
+    void emptySearchIsNotRepeatedWhilePolling() throws Exception {
+        String reference = generator.next();
+        when(paymentClient.search(any(MPSearchRequest.class), any(MPRequestOptions.class))).thenReturn(page());
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(paymentService.getPaymentStatusByReference(reference).isEmpty());
+        }
+
+        verify(paymentClient, times(1)).search(any(MPSearchRequest.class), any(MPRequestOptions.class));
+        verify(sharedState, never()).saveStatuses(any());
+    }
+
+    @Test
+    void unverifiedCallbackDoesNotPinTheReference() throws Exception {
+        String reference = generator.next();
+        when(paymentClient.get(eq(1L), any(MPRequestOptions.class))).thenThrow(notFound());
+        MPResultsResourcesPage<Payment> results = page(payment(8L, reference, "approved", 1));
+        when(paymentClient.search(any(MPSearchRequest.class), any(MPRequestOptions.class))).thenReturn(results);
+        when(sharedState.findStatuses(any())).thenReturn(Map.of(
+                "8", PaymentStatusDto.builder().paymentId("8").status("approved").build()));
+
+        // Callback armado a mano: MercadoPago no conoce el pago 1
+        paymentService.processPaymentCallback(Map.of(
+                "payment_id", "1", "external_reference", reference, "status", "rejected"));
+
+        assertTrue(referenceIndex.latestPaymentId(reference).isEmpty());
+        assertEquals("8", paymentService.getPaymentStatusByReference(reference).orElseThrow().getPaymentId());
+    }
+
+    @Test
+    void callbackRequiringDetailsFailsWhenThePaymentCannotBeFetched() throws Exception {
+        when(paymentClient.get(eq(1L), any(MPRequestOptions.class)))
+                .thenThrow(new MPApiException("unavailable", new MPResponse(503, Map.of(), "{}")));
+        Map<String, String> params = Map.of("payment_id", "1", "status", "approved");
+
+        assertEquals("approved", paymentService.processPaymentCallback(params).getStatus());
+        assertThrows(UpstreamServiceException.class, () -> paymentService.processPaymentCallback(params, true));
+    }
+
+    @Test
+    void indexedPaymentUnknownToMercadoPagoFallsBackToSearch() throws Exception {
+        String reference = generator.next();
+        referenceIndex.recordPayment(reference, null, 1L, "rejected");
+        when(paymentClient.get(eq(1L), any(MPRequestOptions.class))).thenThrow(notFound());
+        MPResultsResourcesPage<Payment> results = page(payment(8L, reference, "approved", 1));
+        when(paymentClient.search(any(MPSearchRequest.class), any(MPRequestOptions.class))).thenReturn(results);
+
+        assertEquals("8", paymentService.getPaymentStatusByReference(reference).orElseThrow().getPaymentId());
+        assertEquals(8L, referenceIndex.latestPaymentId(reference).orElseThrow());
+    }
+
+    private static PaymentStatusDto status(String paymentId, String status, int minute) {
+        return PaymentStatusDto.builder().paymentId(paymentId).status(status)
+                .dateCreated(LocalDateTime.of(2024, 5, 1, 10, minute)).build();
+    }
+
+    private static MPApiException notFound() {
+        return new MPApiException("not found", new MPResponse(404, Map.of(), "{}"));
+    }
+
+    @SafeVarargs
+    private static MPResultsResourcesPage<Payment> page(Payment... payments) {
+        MPResultsResourcesPage<Payment> page = new MPResultsResourcesPage<>();
+        page.setResults(List.of(payments));
+        return page;
+    }
+
+    private static Payment payment(long id, String reference, String status, int minute) {
+        Payment payment = mock(Payment.class);
+        when(payment.getId()).thenReturn(id);
+        when(payment.getExternalReference()).thenReturn(reference);
+        when(payment.getStatus()).thenReturn(status);
+        when(payment.getDateCreated()).thenReturn(OffsetDateTime.parse("2026-10-01T12:00:00Z").plusMinutes(minute));
+        return payment;
+    }
+}
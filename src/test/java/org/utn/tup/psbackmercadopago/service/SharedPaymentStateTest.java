@@ -0,0 +1,164 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.utn.tup.psbackmercadopago.dto.DonationResponseDto;
+import org.utn.tup.psbackmercadopago.dto.PaymentStatusDto;
+import org.utn.tup.psbackmercadopago.state.InMemorySharedStateStore;
+import org.utn.tup.psbackmercadopago.state.SharedStateStore;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SharedPaymentStateTest {
+
+    private static final Duration STATUS_TTL = Duration.ofSeconds(10);
+    private static final Duration TERMINAL_TTL = Duration.ofHours(24);
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final SharedPaymentState state =
+            newState(new InMemorySharedStateStore(1000, SharedPaymentState::isRebuildable));
+
+    @AfterEach
+    void clearTenant() {
+        TenantContext.clear();
+    }
+
+    @Test
+    void webhookIsProcessedOnceUntilItsMarkIsCleared() {
+        assertTrue(state.markWebhookReceived("payment:1"));
+        assertFalse(state.markWebhookReceived("payment:1"));
+
+        // Si el procesamiento falla se libera la marca y el reintento de MercadoPago vuelve a entrar
+        state.clearWebhookMark("payment:1");
+        assertTrue(state.markWebhookReceived("payment:1"));
+    }
+
+    @Test
+    void keysAreScopedByTenant() {
+        TenantContext.set("shelter-a");
+        assertTrue(state.markWebhookReceived("payment:1"));
+        state.saveStatus(status("1", "approved"));
+
+        TenantContext.set("shelter-b");
+        assertTrue(state.markWebhookReceived("payment:1"));
+        assertEquals(Optional.empty(), state.findStatus("1"));
+
+        TenantContext.set("shelter-a");
+        assertEquals("approved", state.findStatus("1").orElseThrow().getStatus());
+        state.saveStatus(status("2", "pending"));
+        assertEquals(List.of("1", "2"), state.findStatuses(List.of("1", "2", "3")).keySet().stream().sorted().toList());
+    }
+
+    @Test
+    void terminalStatusesUseTheLongerTtl() {
+        SharedStateStore mockStore = mock(SharedStateStore.class);
+        SharedPaymentState mocked = newState(mockStore);
+
+        mocked.saveStatus(status("1", "approved"));
+        mocked.saveStatus(status("2", "in_process"));
+        mocked.saveStatuses(List.of(status("3", "refunded"), status("4", "pending")));
+
+        verify(mockStore).put(eq("mp:status:default:1"), anyString(), eq(TERMINAL_TTL));
+        verify(mockStore).put(eq("mp:status:default:2"), anyString(), eq(STATUS_TTL));
+        verify(mockStore).putAll(argThatHasOnlyKey("mp:status:default:3"), eq(TERMINAL_TTL));
+        verify(mockStore).putAll(argThatHasOnlyKey("mp:status:default:4"), eq(STATUS_TTL));
+    }
+
+    @Test
+    void storeFailuresDegradeToNotSharing() {
+        SharedStateStore failing = mock(SharedStateStore.class);
+        when(failing.get(anyString())).thenThrow(new IllegalStateException("down"));
+        when(failing.getAll(any())).thenThrow(new IllegalStateException("down"));
+        when(failing.putIfAbsent(anyString(), anyString(), any())).thenThrow(new IllegalStateException("down"));
+        doThrow(new IllegalStateException("down")).when(failing).putAll(anyMap(), any());
+        SharedPaymentState degraded = newState(failing);
+
+        assertEquals(Optional.empty(), degraded.findStatus("1"));
+        assertEquals(Map.of(), degraded.findStatuses(List.of("1", "2")));
+        assertTrue(degraded.markWebhookReceived("payment:1"));
+        degraded.saveStatuses(List.of(status("1", "approved")));
+        assertEquals(Optional.empty(), degraded.claimDonation("key", "hash"));
+    }
+
+    @Test
+    void onlyOneConcurrentClaimWins() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            Callable<Optional<SharedPaymentState.IdempotencyRecord>> claim =
+                    () -> state.claimDonation("key-1", "hash");
+            List<Future<Optional<SharedPaymentState.IdempotencyRecord>>> results =
+                    callers.invokeAll(List.of(claim, claim, claim, claim, claim, claim, claim, claim));
+
+            int won = 0;
+            for (Future<Optional<SharedPaymentState.IdempotencyRecord>> result : results) {
+                Optional<SharedPaymentState.IdempotencyRecord> existing = result.get();
+                if (existing.isEmpty()) {
+                    won++;
+                } else {
+                    assertTrue(existing.get().isPending());
+                }
+            }
+            assertEquals(1, won);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    void completedClaimReturnsTheDonationAndReleasedClaimCanBeRetaken() {
+        assertEquals(Optional.empty(), state.claimDonation("key-1", "hash"));
+        DonationResponseDto donation = DonationResponseDto.builder().preferenceId("pref-1").build();
+        state.completeDonation("key-1", "hash", donation);
+
+        SharedPaymentState.IdempotencyRecord record = state.claimDonation("key-1", "hash").orElseThrow();
+        assertFalse(record.isPending());
+        assertEquals("hash", record.requestHash());
+        assertEquals("pref-1", record.donation().getPreferenceId());
+
+        assertEquals(Optional.empty(), state.claimDonation("key-2", "hash"));
+        state.releaseDonation("key-2");
+        assertEquals(Optional.empty(), state.claimDonation("key-2", "hash"));
+    }
+
+    @Test
+    void onlyStatusKeysAreRebuildable() {
+        assertTrue(SharedPaymentState.isRebuildable("mp:status:default:1"));
+        assertFalse(SharedPaymentState.isRebuildable("mp:webhook:default:payment:1"));
+        assertFalse(SharedPaymentState.isRebuildable("mp:donation:default:key-1"));
+    }
+
+    private SharedPaymentState newState(SharedStateStore backing) {
+        return new SharedPaymentState(backing, objectMapper, STATUS_TTL, TERMINAL_TTL,
+                Duration.ofHours(1), Duration.ofHours(24), Duration.ofMinutes(1));
+    }
+
+    private static Map<String, String> argThatHasOnlyKey(String key) {
+        return argThat(map -> map.size() == 1 && map.containsKey(key));
+    }
+
+    private static PaymentStatusDto status(String paymentId, String status) {
+        return PaymentStatusDto.builder().paymentId(paymentId).status(status).build();
+    }
+}
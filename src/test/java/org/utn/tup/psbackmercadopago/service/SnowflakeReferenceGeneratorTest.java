@@ -0,0 +1,120 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnowflakeReferenceGeneratorTest {
+
+    private static final int THREADS = 16;
+    private static final int IDS_PER_THREAD = 50_000;
+
+    @Test
+    void generatesUniqueMonotonicReferencesAcrossThreads() throws Exception {
+        SnowflakeReferenceGenerator generator = new SnowflakeReferenceGenerator("DONATION-", 7);
+        Set<String> seen = ConcurrentHashMap.newKeySet(THREADS * IDS_PER_THREAD);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    String previous = "";
+                    boolean ordered = true;
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        String reference = generator.next();
+                        ordered &= reference.compareTo(previous) > 0;
+                        seen.add(reference);
+                        previous = reference;
+                    }
+                    return ordered;
+                }));
+            }
+
+            start.countDown();
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(30, TimeUnit.SECONDS), "references must increase within a thread");
+            }
+
+            assertEquals(THREADS * IDS_PER_THREAD, seen.size(), "references must not collide");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void differentNodesNeverCollide() {
+        SnowflakeReferenceGenerator nodeA = new SnowflakeReferenceGenerator("DONATION-", 1);
+        SnowflakeReferenceGenerator nodeB = new SnowflakeReferenceGenerator("DONATION-", 2);
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(seen.add(nodeA.next()));
+            assertTrue(seen.add(nodeB.next()));
+        }
+    }
+
+    @Test
+    void referencesHaveFixedWidth() {
+        SnowflakeReferenceGenerator generator = new SnowflakeReferenceGenerator("DONATION-", 3);
+
+        String reference = generator.next();
+
+        assertTrue(reference.startsWith("DONATION-"));
+        assertEquals("DONATION-".length() + 13, reference.length());
+        assertEquals(3, generator.nodeId());
+    }
+
+    @Test
+    void decodesOnlyItsOwnReferences() {
+        SnowflakeReferenceGenerator generator = new SnowflakeReferenceGenerator("DONATION-", 3);
+
+        String first = generator.next();
+        String second = generator.next();
+
+        assertTrue(generator.decode(first).getAsLong() < generator.decode(second).getAsLong());
+        assertTrue(generator.decode("DONATION-1234abcd").isEmpty());
+        assertTrue(generator.decode("OTHER-" + first.substring("DONATION-".length())).isEmpty());
+        assertTrue(generator.decode(first.toLowerCase()).isEmpty());
+        assertTrue(generator.decode(null).isEmpty());
+    }
+
+    @Test
+    void decodesReferencesPastTheFirstBase32Digit() {
+        // 2^38 ms después de EPOCH el timestamp alcanza el bit 60 y el primer carácter deja de ser '0'
+        Instant start = Instant.ofEpochMilli(SnowflakeReferenceGenerator.EPOCH + (1L << 38) + 1_000);
+        SnowflakeReferenceGenerator generator = new SnowflakeReferenceGenerator("DONATION-", 3, start);
+
+        String reference = generator.next();
+        long id = generator.decode(reference).orElseThrow();
+
+        assertEquals('1', reference.charAt("DONATION-".length()));
+        assertTrue(id > 0);
+        assertTrue(id >>> (SnowflakeReferenceGenerator.NODE_BITS + SnowflakeReferenceGenerator.SEQUENCE_BITS)
+                >= 1L << 38);
+        assertTrue(generator.decode(generator.next()).getAsLong() > id);
+        assertTrue(generator.decode("DONATION-8" + reference.substring("DONATION-".length() + 1)).isEmpty());
+    }
+
+    @Test
+    void nodeIdCanBeRequired() {
+        assertThrows(IllegalStateException.class, () -> new SnowflakeReferenceGenerator("DONATION-", -1, true));
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeReferenceGenerator("DONATION-", 1024, false));
+        assertEquals(5, new SnowflakeReferenceGenerator("DONATION-", 5, true).nodeId());
+    }
+}
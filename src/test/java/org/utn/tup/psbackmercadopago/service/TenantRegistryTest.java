@@ -0,0 +1,93 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.utn.tup.psbackmercadopago.Config.TenantProperties;
+import org.utn.tup.psbackmercadopago.Exceptions.PaymentValidationException;
+import org.utn.tup.psbackmercadopago.Exceptions.TenantOverloadedException;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TenantRegistryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+    private TenantRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        TenantProperties properties = new TenantProperties();
+        properties.getTenants().put("shelter-a", tenant(1));
+        properties.getTenants().put("shelter-b", tenant(1));
+        registry = new TenantRegistry(properties, "TEST-default-token",
+                new WebhookSignatureVerifier("", Duration.ofMinutes(10), meterRegistry), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        registry.close();
+    }
+
+    @Test
+    void resolvesConfiguredTenantsAndFallsBackToDefault() {
+        assertEquals("shelter-a", registry.resolve("shelter-a").getId());
+        assertEquals(TenantRegistry.DEFAULT_TENANT, registry.resolve(null).getId());
+        assertEquals(TenantRegistry.DEFAULT_TENANT, registry.resolve(" ").getId());
+        assertTrue(registry.hasMultipleTenants());
+    }
+
+    @Test
+    void unknownTenantIsRejected() {
+        PaymentValidationException e = assertThrows(PaymentValidationException.class,
+                () -> registry.resolve("shelter-x"));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+    }
+
+    @Test
+    void exhaustedPermitsOnOneTenantDoNotBlockAnother() throws Exception {
+        MercadoPagoTenant busy = registry.resolve("shelter-a");
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> holder = callers.submit(() -> busy.call(() -> {
+            entered.countDown();
+            release.await();
+            return "done";
+        }));
+        assertTrue(entered.await(2, TimeUnit.SECONDS));
+
+        try {
+            assertThrows(TenantOverloadedException.class, () -> busy.call(() -> "rejected"));
+
+            long start = System.nanoTime();
+            assertEquals("ok", registry.resolve("shelter-b").call(() -> "ok"));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 50,
+                    "the other tenant should not wait for the busy one");
+            assertEquals(1.0, meterRegistry.get("mp.tenant.rejected").tag("tenant", "shelter-a").counter().count());
+            assertEquals(0.0, meterRegistry.get("mp.tenant.rejected").tag("tenant", "shelter-b").counter().count());
+        } finally {
+            release.countDown();
+        }
+        assertEquals("done", holder.get(2, TimeUnit.SECONDS));
+    }
+
+    private static TenantProperties.Tenant tenant(int maxConcurrentRequests) {
+        TenantProperties.Tenant tenant = new TenantProperties.Tenant();
+        tenant.setAccessToken("TEST-token");
+        tenant.setMaxConcurrentRequests(maxConcurrentRequests);
+        tenant.setAcquireTimeout(Duration.ofMillis(100));
+        return tenant;
+    }
+}
@@ -0,0 +1,155 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.utn.tup.psbackmercadopago.dto.PaymentStatusDto;
+import org.utn.tup.psbackmercadopago.state.InMemorySharedStateStore;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TerminalStatusResponseCacheTest {
+
+    private static final Duration TTL = Duration.ofHours(24);
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    // Un único almacenamiento compartido, como Redis entre réplicas
+    private final SharedPaymentState sharedState = new SharedPaymentState(
+            new InMemorySharedStateStore(1000, SharedPaymentState::isRebuildable), objectMapper,
+            Duration.ofSeconds(10), TTL, Duration.ofHours(1), Duration.ofHours(24), Duration.ofMinutes(1));
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    @Test
+    void cachesTerminalStatusesAsSerializedBytes() throws Exception {
+        TerminalStatusResponseCache cache = newCache(1 << 20);
+        PaymentStatusDto approved = status("1001", "approved");
+
+        TerminalStatusResponseCache.CachedResponse stored = cache.update(approved).orElseThrow();
+        TerminalStatusResponseCache.CachedResponse cached = cache.get("1001").orElseThrow();
+
+        assertArrayEquals(objectMapper.writeValueAsBytes(approved), cached.body());
+        assertTrue(new String(cached.body(), StandardCharsets.UTF_8).contains("\"status\":\"approved\""));
+        assertEquals(stored.etag(), cached.etag());
+        assertEquals(Optional.empty(), cache.get("1002"));
+    }
+
+    @Test
+    void nonTerminalStatusesAreNotCachedAndReplacePreviousEntry() {
+        TerminalStatusResponseCache cache = newCache(1 << 20);
+
+        assertEquals(Optional.empty(), cache.update(status("1001", "in_process")));
+        assertEquals(Optional.empty(), cache.get("1001"));
+
+        cache.update(status("1001", "approved"));
+        cache.update(status("1001", "pending"));
+        assertEquals(Optional.empty(), cache.get("1001"));
+        assertEquals(0, cache.currentBytes());
+    }
+
+    @Test
+    void etagDependsOnContent() {
+        TerminalStatusResponseCache cache = newCache(1 << 20);
+
+        String approved = cache.update(status("1001", "approved")).orElseThrow().etag();
+        String approvedAgain = cache.update(status("1001", "approved")).orElseThrow().etag();
+        String refunded = cache.update(status("1001", "refunded")).orElseThrow().etag();
+
+        assertEquals(approved, approvedAgain);
+        assertNotEquals(approved, refunded);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void ifNoneMatchAcceptsListsWeakTagsAndWildcard() {
+        TerminalStatusResponseCache.CachedResponse response =
+                newCache(1 << 20).update(status("1001", "approved")).orElseThrow();
+        String etag = response.etag();
+
+        assertTrue(response.matches(etag));
+        assertTrue(response.matches("\"other\", W/" + etag));
+        assertTrue(response.matches("*"));
+        assertFalse(response.matches("\"other\""));
+        assertFalse(response.matches(null));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedWhenOverByteBudget() {
+        TerminalStatusResponseCache probe = newCache(1 << 20);
+        probe.update(status("1", "approved"));
+        long entryBytes = probe.currentBytes();
+
+        // Entran dos entradas y media: la tercera desaloja a la menos usada
+        TerminalStatusResponseCache cache = newCache(entryBytes * 5 / 2);
+        cache.update(status("1", "approved"));
+        cache.update(status("2", "approved"));
+        cache.get("1");
+        cache.update(status("3", "approved"));
+
+        assertTrue(cache.get("1").isPresent());
+        assertEquals(Optional.empty(), cache.get("2"));
+        assertTrue(cache.get("3").isPresent());
+        assertTrue(cache.currentBytes() <= entryBytes * 5 / 2);
+    }
+
+    @Test
+    void refundOnOneReplicaInvalidatesApprovedResponseOnAnother() {
+        TerminalStatusResponseCache replicaA = newCache(1 << 20);
+        TerminalStatusResponseCache replicaB = newCache(1 << 20);
+        String approved = replicaA.update(status("1001", "approved")).orElseThrow().etag();
+        replicaB.update(status("1001", "approved"));
+        assertEquals(approved, replicaB.get("1001").orElseThrow().etag());
+
+        // El webhook de la devolución llega solo a la réplica A
+        String refunded = replicaA.update(status("1001", "refunded")).orElseThrow().etag();
+
+        assertEquals(Optional.empty(), replicaB.get("1001"));
+        assertEquals(0, replicaB.size());
+        assertEquals(refunded, replicaA.get("1001").orElseThrow().etag());
+        assertEquals(refunded, replicaB.update(status("1001", "refunded")).orElseThrow().etag());
+        assertEquals(refunded, replicaB.get("1001").orElseThrow().etag());
+    }
+
+    @Test
+    void entriesExpireAfterTerminalStatusTtl() {
+        TerminalStatusResponseCache cache = newCache(1 << 20);
+        cache.update(status("1001", "approved"));
+
+        clock.addAndGet(TTL.toMillis() - 1);
+        assertTrue(cache.get("1001").isPresent());
+        clock.incrementAndGet();
+        assertEquals(Optional.empty(), cache.get("1001"));
+        assertEquals(0, cache.currentBytes());
+    }
+
+    private TerminalStatusResponseCache newCache(long maxBytes) {
+        return new TerminalStatusResponseCache(objectMapper, sharedState, maxBytes, TTL,
+                new SimpleMeterRegistry(), clock::get);
+    }
+
+    private static PaymentStatusDto status(String paymentId, String status) {
+        return PaymentStatusDto.builder()
+                .paymentId(paymentId)
+                .status(status)
+                .transactionAmount(new BigDecimal("1500.00"))
+                .externalReference("DONATION-0000000000000")
+                .dateCreated(LocalDateTime.of(2026, 10, 1, 12, 0))
+                .additionalInfo(Map.of("installments", 1, "currency_id", "ARS"))
+                .build();
+    }
+}
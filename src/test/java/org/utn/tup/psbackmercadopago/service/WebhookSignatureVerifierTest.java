@@ -0,0 +1,87 @@
+package org.utn.tup.psbackmercadopago.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WebhookSignatureVerifierTest {
+
+    private static final String SECRET = "test-secret";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // Reloj fijo poco después del ts de las firmas de prueba
+    private final AtomicLong now = new AtomicLong(1704908010_000L + 30_000);
+    private final WebhookSignatureVerifier verifier =
+            new WebhookSignatureVerifier(SECRET, Duration.ofMinutes(5), meterRegistry, now::get);
+
+    @Test
+    void acceptsValidSignature() throws Exception {
+        String signature = "ts=1704908010,v1=" + sign("id:abc123;request-id:req-1;ts:1704908010;");
+
+        assertEquals(WebhookSignatureVerifier.Result.VALID, verifier.verify(signature, "req-1", "ABC123"));
+        assertEquals(WebhookSignatureVerifier.Result.VALID,
+                verifier.verify(" v1=" + signature.substring(17).toUpperCase() + ", ts=1704908010", "req-1", "abc123"));
+    }
+
+    @Test
+    void omitsMissingPartsFromManifest() throws Exception {
+        String signature = "ts=1704908010,v1=" + sign("ts:1704908010;");
+
+        assertEquals(WebhookSignatureVerifier.Result.VALID, verifier.verify(signature, null, null));
+    }
+
+    @Test
+    void rejectsForgedAndMalformedSignatures() throws Exception {
+        String hash = sign("id:1;request-id:req-1;ts:1704908010;");
+        String signature = "ts=1704908010,v1=" + hash;
+
+        assertEquals(WebhookSignatureVerifier.Result.MISMATCH, verifier.verify(signature, "req-2", "1"));
+        assertEquals(WebhookSignatureVerifier.Result.MISMATCH, verifier.verify("ts=1704908011,v1=" + hash, "req-1", "1"));
+        assertEquals(WebhookSignatureVerifier.Result.MISMATCH, verifier.verify("ts=1704908010,v1=zz" + hash.substring(2), "req-1", "1"));
+        assertEquals(WebhookSignatureVerifier.Result.MALFORMED, verifier.verify("ts=1704908010", "req-1", "1"));
+        assertEquals(WebhookSignatureVerifier.Result.MISSING_HEADER, verifier.verify(null, "req-1", "1"));
+
+        assertEquals(3.0, meterRegistry.get("mp.webhook.rejected").tag("reason", "mismatch").counter().count());
+        assertEquals(1.0, meterRegistry.get("mp.webhook.rejected").tag("reason", "malformed").counter().count());
+    }
+
+    @Test
+    void rejectsTimestampsOutsideTheWindow() throws Exception {
+        String signature = "ts=1704908010,v1=" + sign("id:1;request-id:req-1;ts:1704908010;");
+        String millisSignature = "ts=1704908010000,v1=" + sign("id:1;request-id:req-1;ts:1704908010000;");
+
+        assertEquals(WebhookSignatureVerifier.Result.VALID, verifier.verify(millisSignature, "req-1", "1"));
+
+        now.addAndGet(Duration.ofMinutes(10).toMillis());
+        assertEquals(WebhookSignatureVerifier.Result.STALE, verifier.verify(signature, "req-1", "1"));
+        assertEquals(WebhookSignatureVerifier.Result.STALE, verifier.verify(millisSignature, "req-1", "1"));
+
+        now.set(1704908010_000L - Duration.ofMinutes(10).toMillis());
+        assertEquals(WebhookSignatureVerifier.Result.STALE, verifier.verify(signature, "req-1", "1"));
+
+        assertEquals(WebhookSignatureVerifier.Result.MALFORMED, verifier.verify("ts=17049x8010,v1=" + "0".repeat(64), "req-1", "1"));
+        assertEquals(3.0, meterRegistry.get("mp.webhook.rejected").tag("reason", "stale").counter().count());
+    }
+
+    @Test
+    void acceptsEverythingWhenSecretIsNotConfigured() {
+        WebhookSignatureVerifier disabled =
+                new WebhookSignatureVerifier("", Duration.ofMinutes(5), new SimpleMeterRegistry());
+
+        assertEquals(WebhookSignatureVerifier.Result.DISABLED, disabled.verify(null, null, null));
+    }
+
+    private static String sign(String manifest) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return HexFormat.of().formatHex(mac.doFinal(manifest.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,62 @@
+package org.utn.tup.psbackmercadopago.state;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemorySharedStateStoreTest {
+
+    @Test
+    void entriesExpireAfterTtl() throws InterruptedException {
+        InMemorySharedStateStore store = new InMemorySharedStateStore(100, key -> true);
+        store.put("a", "uno", Duration.ofMillis(50));
+
+        assertEquals(Optional.of("uno"), store.get("a"));
+        Thread.sleep(100);
+        assertEquals(Optional.empty(), store.get("a"));
+    }
+
+    @Test
+    void putIfAbsentWinsOnceAndAgainAfterExpiry() throws InterruptedException {
+        InMemorySharedStateStore store = new InMemorySharedStateStore(100, key -> true);
+
+        assertTrue(store.putIfAbsent("webhook", "1", Duration.ofMillis(50)));
+        assertFalse(store.putIfAbsent("webhook", "2", Duration.ofMillis(50)));
+        assertEquals(Optional.of("1"), store.get("webhook"));
+
+        Thread.sleep(100);
+        assertTrue(store.putIfAbsent("webhook", "3", Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void overCapacityEvictsOnlyEvictableKeys() {
+        InMemorySharedStateStore store = new InMemorySharedStateStore(10, key -> key.startsWith("status:"));
+        for (int i = 0; i < 8; i++) {
+            store.putIfAbsent("dedup:" + i, "1", Duration.ofMinutes(1));
+        }
+        for (int i = 0; i < 8; i++) {
+            store.put("status:" + i, "approved", Duration.ofMinutes(1));
+        }
+
+        assertEquals(10, store.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(Optional.of("1"), store.get("dedup:" + i), "dedup:" + i + " must survive eviction");
+        }
+    }
+
+    @Test
+    void nonEvictableKeysAreKeptOverCapacity() {
+        InMemorySharedStateStore store = new InMemorySharedStateStore(10, key -> false);
+        for (int i = 0; i < 15; i++) {
+            assertTrue(store.putIfAbsent("idempotency:" + i, "pending", Duration.ofMinutes(1)));
+        }
+
+        assertEquals(15, store.size());
+        assertFalse(store.putIfAbsent("idempotency:0", "pending", Duration.ofMinutes(1)));
+    }
+}
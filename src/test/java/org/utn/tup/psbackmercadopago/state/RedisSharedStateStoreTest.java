@@ -0,0 +1,146 @@
+package org.utn.tup.psbackmercadopago.state;
+
+import io.lettuce.core.RedisConnectionException;
+import io.lettuce.core.RedisException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedisSharedStateStoreTest {
+
+    private static RedisServer redisServer;
+    private static RedisSharedStateStore store;
+
+    private String prefix;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port = freePort();
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        store = new RedisSharedStateStore("redis://localhost:" + port, Duration.ofSeconds(2));
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    @BeforeEach
+    void newPrefix() {
+        prefix = "test:" + UUID.randomUUID() + ":";
+    }
+
+    @Test
+    void putAndGetWithTtl() throws InterruptedException {
+        store.put(prefix + "a", "{\"status\":\"approved\"}", Duration.ofMillis(200));
+
+        assertEquals(Optional.of("{\"status\":\"approved\"}"), store.get(prefix + "a"));
+
+        Thread.sleep(400);
+        assertEquals(Optional.empty(), store.get(prefix + "a"));
+    }
+
+    @Test
+    void putIfAbsentOnlyWinsOnce() {
+        assertTrue(store.putIfAbsent(prefix + "webhook", "1", Duration.ofMinutes(1)));
+        assertFalse(store.putIfAbsent(prefix + "webhook", "1", Duration.ofMinutes(1)));
+
+        store.delete(prefix + "webhook");
+        assertTrue(store.putIfAbsent(prefix + "webhook", "1", Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void batchOperationsReturnOnlyFoundKeys() {
+        store.putAll(Map.of(prefix + "1", "uno", prefix + "2", "dos", prefix + "3", "tres"), Duration.ofMinutes(1));
+
+        Map<String, String> found = store.getAll(List.of(prefix + "1", prefix + "3", prefix + "missing"));
+
+        assertEquals(Map.of(prefix + "1", "uno", prefix + "3", "tres"), found);
+    }
+
+    @Test
+    void unreachableRedisAtStartupIsNotFatal() throws IOException {
+        int port = freePort();
+        try (RedisSharedStateStore down = new RedisSharedStateStore("redis://localhost:" + port, Duration.ofMillis(200))) {
+            assertThrows(RedisConnectionException.class, () -> down.get(prefix + "a"));
+        }
+    }
+
+    @Test
+    void lostConnectionFailsFastInsteadOfWaitingForTheTimeout() throws Exception {
+        int port = freePort();
+        RedisServer server = new RedisServer(port);
+        server.start();
+        try (RedisSharedStateStore lost = new RedisSharedStateStore("redis://localhost:" + port, Duration.ofSeconds(5))) {
+            lost.put(prefix + "a", "uno", Duration.ofMinutes(1));
+            server.stop();
+            Thread.sleep(200);
+
+            long start = System.nanoTime();
+            assertThrows(RedisException.class, () -> lost.get(prefix + "a"));
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(elapsedMillis < 1000, "commands should be rejected while disconnected: " + elapsedMillis);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void nearCacheDoesNotKeepALostClaim() {
+        NearCachedSharedStateStore nearCached =
+                new NearCachedSharedStateStore(store, Duration.ofSeconds(5), 100, new SimpleMeterRegistry());
+        store.put(prefix + "claim", "otra-replica", Duration.ofMinutes(1));
+
+        assertFalse(nearCached.putIfAbsent(prefix + "claim", "esta-replica", Duration.ofMinutes(1)));
+        assertEquals(Optional.of("otra-replica"), nearCached.get(prefix + "claim"));
+    }
+
+    @Test
+    void nearCacheServesRepeatedReadsLocally() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        NearCachedSharedStateStore nearCached =
+                new NearCachedSharedStateStore(store, Duration.ofSeconds(5), 100, meterRegistry);
+        store.put(prefix + "status", "pending", Duration.ofMinutes(1));
+
+        assertEquals(Optional.of("pending"), nearCached.get(prefix + "status"));
+        assertEquals(Optional.of("pending"), nearCached.get(prefix + "status"));
+        assertEquals(Map.of(prefix + "status", "pending"), nearCached.getAll(List.of(prefix + "status")));
+
+        assertEquals(1.0, meterRegistry.counter("mp.state.reads", "source", "remote").count());
+        assertEquals(2.0, meterRegistry.counter("mp.state.reads", "source", "near").count());
+
+        // Las escrituras pasan por el near cache, así que la réplica que escribe ve su propio valor
+        nearCached.put(prefix + "status", "approved", Duration.ofMinutes(1));
+        assertEquals(Optional.of("approved"), nearCached.get(prefix + "status"));
+        assertEquals(Optional.of("approved"), store.get(prefix + "status"));
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}